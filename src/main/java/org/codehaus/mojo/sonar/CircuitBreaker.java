@@ -0,0 +1,117 @@
+package org.codehaus.mojo.sonar;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Remembers, on disk, that a server failed to answer during the last builds. Once <code>threshold</code>
+ * consecutive failures are recorded, requests are refused without touching the network until
+ * <code>openDuration</code> has elapsed. The state is shared by every build running on the same machine.
+ */
+public class CircuitBreaker
+{
+
+    private static final String FAILURES = "failures";
+
+    private static final String OPEN_UNTIL = "openUntil";
+
+    private final PropertiesStore store;
+
+    private final String key;
+
+    private final int threshold;
+
+    private final long openDurationMilliseconds;
+
+    public CircuitBreaker( File directory, String key, int threshold, long openDurationMilliseconds )
+    {
+        this.store = new PropertiesStore( directory );
+        this.key = key;
+        this.threshold = threshold;
+        this.openDurationMilliseconds = openDurationMilliseconds;
+    }
+
+    public static File defaultDirectory()
+    {
+        return new File( PropertiesStore.sonarUserHome(), "cache/circuit-breaker" );
+    }
+
+    /**
+     * @return the time until which requests are refused, or 0 if requests are allowed
+     */
+    public long openUntil()
+    {
+        PropertiesStore.Entry entry = store.read( key );
+        if ( entry == null )
+        {
+            return 0L;
+        }
+        long openUntil = parseLong( entry.getProperty( OPEN_UNTIL ) );
+        return openUntil > System.currentTimeMillis() ? openUntil : 0L;
+    }
+
+    public void recordSuccess()
+    {
+        if ( store.read( key ) != null )
+        {
+            store.delete( key );
+        }
+    }
+
+    public void recordFailure()
+    {
+        PropertiesStore.Entry entry = store.read( key );
+        long failures = 1L + ( entry == null ? 0L : parseLong( entry.getProperty( FAILURES ) ) );
+        Properties props = new Properties();
+        props.setProperty( FAILURES, String.valueOf( failures ) );
+        if ( failures >= threshold )
+        {
+            props.setProperty( OPEN_UNTIL, String.valueOf( System.currentTimeMillis() + openDurationMilliseconds ) );
+        }
+        try
+        {
+            store.write( key, props );
+        }
+        catch ( IOException e )
+        {
+            // the breaker only protects the server, the build can go on without it
+        }
+    }
+
+    private static long parseLong( String value )
+    {
+        try
+        {
+            return value == null ? 0L : Long.parseLong( value );
+        }
+        catch ( NumberFormatException e )
+        {
+            return 0L;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.codehaus.mojo.sonar;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.codehaus.plexus.util.IOUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * {@link HttpTransport} based on {@link HttpURLConnection}. Connections are never explicitly disconnected and
+ * responses are always fully read, so the JDK keeps the underlying sockets alive and reuses them for the
+ * following requests to the same host. HTTPS connections share the SSL context of {@link HttpsTrust}, hence
+ * TLS sessions are resumed instead of being negotiated again.
+ */
+public class DefaultHttpTransport
+    implements HttpTransport
+{
+
+    private static final DefaultHttpTransport INSTANCE =
+        new DefaultHttpTransport( ServerMetadata.CONNECT_TIMEOUT_MILLISECONDS,
+                                  ServerMetadata.READ_TIMEOUT_MILLISECONDS );
+
+    private final int connectTimeoutMilliseconds;
+
+    private final int readTimeoutMilliseconds;
+
+    private final HttpsTrust httpsTrust;
+
+    public DefaultHttpTransport( int connectTimeoutMilliseconds, int readTimeoutMilliseconds )
+    {
+        this( connectTimeoutMilliseconds, readTimeoutMilliseconds, TrustMode.ALL );
+    }
+
+    public DefaultHttpTransport( int connectTimeoutMilliseconds, int readTimeoutMilliseconds, TrustMode trustMode )
+    {
+        this.connectTimeoutMilliseconds = connectTimeoutMilliseconds;
+        this.readTimeoutMilliseconds = readTimeoutMilliseconds;
+        this.httpsTrust = HttpsTrust.forMode( trustMode );
+    }
+
+    /**
+     * @return the transport shared by the whole JVM
+     */
+    public static DefaultHttpTransport getInstance()
+    {
+        return INSTANCE;
+    }
+
+    public String get( String url )
+        throws IOException
+    {
+        HttpURLConnection conn = openConnection( url, "GET" );
+        int statusCode = conn.getResponseCode();
+        if ( statusCode != HttpURLConnection.HTTP_OK )
+        {
+            // the error body must be consumed too, otherwise the connection can not be reused
+            consume( conn.getErrorStream() );
+            throw new HttpStatusException( url, statusCode );
+        }
+        InputStream input = conn.getInputStream();
+        try
+        {
+            return IOUtil.toString( input );
+        }
+        finally
+        {
+            IOUtil.close( input );
+        }
+    }
+
+    HttpURLConnection openConnection( String url, String method )
+        throws IOException
+    {
+        URL page = new URL( url );
+        HttpURLConnection conn = (HttpURLConnection) page.openConnection();
+        httpsTrust.trust( conn );
+        conn.setConnectTimeout( connectTimeoutMilliseconds );
+        conn.setReadTimeout( readTimeoutMilliseconds );
+        conn.setRequestMethod( method );
+        return conn;
+    }
+
+    private static void consume( InputStream input )
+    {
+        if ( input == null )
+        {
+            return;
+        }
+        try
+        {
+            byte[] buffer = new byte[1024];
+            while ( input.read( buffer ) >= 0 )
+            {
+                // discard
+            }
+        }
+        catch ( IOException e )
+        {
+            // the connection will not be reused
+        }
+        finally
+        {
+            IOUtil.close( input );
+        }
+    }
+}
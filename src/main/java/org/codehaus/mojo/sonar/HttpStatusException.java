@@ -0,0 +1,58 @@
+package org.codehaus.mojo.sonar;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.IOException;
+
+/**
+ * Thrown by a {@link HttpTransport} when the server answers with an unexpected status.
+ */
+public class HttpStatusException
+    extends IOException
+{
+
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+
+    public HttpStatusException( String url, int status )
+    {
+        super( "Status returned by url : '" + url + "' is invalid : " + status );
+        this.status = status;
+    }
+
+    public int getStatus()
+    {
+        return status;
+    }
+
+    /**
+     * @return true if the request may succeed when sent again, ie the server is unavailable or overloaded
+     */
+    public boolean isTransient()
+    {
+        return status >= 500 || status == 429 || status == 408;
+    }
+}
@@ -28,28 +28,54 @@ import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509TrustManager;
 import java.net.HttpURLConnection;
 import java.security.KeyManagementException;
+import java.security.KeyStore;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
 
+/**
+ * Configures HTTPS connections. Each trust mode has a single SSL context for the whole JVM lifetime, so TLS sessions
+ * negotiated by a build are resumed by the following requests, and by the following builds when Maven runs as a
+ * daemon.
+ */
 class HttpsTrust
 {
 
+    static final int SESSION_CACHE_SIZE = 64;
+
+    static final int SESSION_TIMEOUT_SECONDS = 24 * 60 * 60;
+
     static HttpsTrust INSTANCE = new HttpsTrust( new Ssl() );
 
+    private static HttpsTrust jvmInstance;
+
     static class Ssl
     {
         SSLSocketFactory newFactory( TrustManager... managers )
             throws NoSuchAlgorithmException, KeyManagementException
+        {
+            return newContext( managers ).getSocketFactory();
+        }
+
+        SSLContext newContext( TrustManager... managers )
+            throws NoSuchAlgorithmException, KeyManagementException
         {
             SSLContext context = SSLContext.getInstance( "TLS" );
             context.init( null, managers, new SecureRandom() );
-            return context.getSocketFactory();
+            SSLSessionContext sessions = context.getClientSessionContext();
+            if ( sessions != null )
+            {
+                sessions.setSessionCacheSize( SESSION_CACHE_SIZE );
+                sessions.setSessionTimeout( SESSION_TIMEOUT_SECONDS );
+            }
+            return context;
         }
     }
 
@@ -63,13 +89,52 @@ class HttpsTrust
         this.hostnameVerifier = createHostnameVerifier();
     }
 
+    private HttpsTrust( SSLSocketFactory socketFactory, HostnameVerifier hostnameVerifier )
+    {
+        this.socketFactory = socketFactory;
+        this.hostnameVerifier = hostnameVerifier;
+    }
+
+    static synchronized HttpsTrust forMode( TrustMode mode )
+    {
+        if ( mode == TrustMode.ALL )
+        {
+            return INSTANCE;
+        }
+        if ( jvmInstance == null )
+        {
+            jvmInstance = new HttpsTrust( createJvmSocketFactory( new Ssl() ), null );
+        }
+        return jvmInstance;
+    }
+
     void trust( HttpURLConnection connection )
     {
         if ( connection instanceof HttpsURLConnection )
         {
             HttpsURLConnection httpsConnection = (HttpsURLConnection) connection;
             httpsConnection.setSSLSocketFactory( socketFactory );
-            httpsConnection.setHostnameVerifier( hostnameVerifier );
+            if ( hostnameVerifier != null )
+            {
+                httpsConnection.setHostnameVerifier( hostnameVerifier );
+            }
+        }
+    }
+
+    /**
+     * Trust the certificates of the JVM trust store
+     */
+    private static SSLSocketFactory createJvmSocketFactory( Ssl context )
+    {
+        try
+        {
+            TrustManagerFactory factory = TrustManagerFactory.getInstance( TrustManagerFactory.getDefaultAlgorithm() );
+            factory.init( (KeyStore) null );
+            return context.newFactory( factory.getTrustManagers() );
+        }
+        catch ( Exception e )
+        {
+            throw new IllegalStateException( "Fail to build SSL factory", e );
         }
     }
 
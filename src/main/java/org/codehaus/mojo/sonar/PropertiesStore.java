@@ -0,0 +1,205 @@
+package org.codehaus.mojo.sonar;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.apache.commons.lang.StringUtils;
+import org.codehaus.plexus.util.IOUtil;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * Directory of small properties files, one per key. A file is first written under a temporary name and then
+ * renamed, so concurrent readers from other JVMs never see a partially written entry.
+ */
+class PropertiesStore
+{
+
+    private static final String KEY = "key";
+
+    private static final String TIMESTAMP = "timestamp";
+
+    private final File directory;
+
+    PropertiesStore( File directory )
+    {
+        this.directory = directory;
+    }
+
+    static File sonarUserHome()
+    {
+        String sonarUserHome = System.getenv( "SONAR_USER_HOME" );
+        if ( StringUtils.isNotBlank( sonarUserHome ) )
+        {
+            return new File( sonarUserHome );
+        }
+        return new File( System.getProperty( "user.home" ), ".sonar" );
+    }
+
+    /**
+     * @return the stored entry, or null if there is none or if it can not be read
+     */
+    Entry read( String key )
+    {
+        File file = fileFor( key );
+        if ( !file.isFile() )
+        {
+            return null;
+        }
+        Properties props = new Properties();
+        InputStream input = null;
+        try
+        {
+            input = new FileInputStream( file );
+            props.load( input );
+        }
+        catch ( IOException e )
+        {
+            return null;
+        }
+        finally
+        {
+            IOUtil.close( input );
+        }
+        if ( !key.equals( props.getProperty( KEY ) ) )
+        {
+            return null;
+        }
+        try
+        {
+            return new Entry( props, Long.parseLong( props.getProperty( TIMESTAMP ) ) );
+        }
+        catch ( NumberFormatException e )
+        {
+            return null;
+        }
+    }
+
+    void write( String key, String name, String value )
+        throws IOException
+    {
+        Properties props = new Properties();
+        props.setProperty( name, value );
+        write( key, props );
+    }
+
+    void write( String key, Properties values )
+        throws IOException
+    {
+        Properties props = new Properties();
+        props.putAll( values );
+        props.setProperty( KEY, key );
+        props.setProperty( TIMESTAMP, String.valueOf( System.currentTimeMillis() ) );
+
+        if ( !directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory() )
+        {
+            throw new IOException( "Unable to create directory " + directory );
+        }
+        File tmp = File.createTempFile( "entry", ".tmp", directory );
+        OutputStream output = null;
+        try
+        {
+            output = new FileOutputStream( tmp );
+            props.store( output, null );
+            output.close();
+            output = null;
+
+            File target = fileFor( key );
+            // renaming over an existing file fails on Windows
+            if ( !tmp.renameTo( target ) && ( !target.delete() || !tmp.renameTo( target ) ) )
+            {
+                throw new IOException( "Unable to move " + tmp + " to " + target );
+            }
+        }
+        finally
+        {
+            IOUtil.close( output );
+            tmp.delete();
+        }
+    }
+
+    void delete( String key )
+    {
+        fileFor( key ).delete();
+    }
+
+    private File fileFor( String key )
+    {
+        return new File( directory, md5Hex( key ) + ".properties" );
+    }
+
+    private static String md5Hex( String key )
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance( "MD5" ).digest( key.getBytes( "UTF-8" ) );
+            StringBuilder hex = new StringBuilder( digest.length * 2 );
+            for ( byte b : digest )
+            {
+                hex.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) ).append( Character.forDigit( b & 0xF, 16 ) );
+            }
+            return hex.toString();
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( "MD5 is not available", e );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( "UTF-8 is not available", e );
+        }
+    }
+
+    static class Entry
+    {
+        private final Properties properties;
+
+        private final long timestamp;
+
+        Entry( Properties properties, long timestamp )
+        {
+            this.properties = properties;
+            this.timestamp = timestamp;
+        }
+
+        String getProperty( String name )
+        {
+            return properties.getProperty( name );
+        }
+
+        boolean isOlderThan( long milliseconds )
+        {
+            return System.currentTimeMillis() - timestamp > milliseconds;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.codehaus.mojo.sonar;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.Random;
+
+/**
+ * How many times a request to the server is attempted, and how long to wait between attempts. The delay grows
+ * exponentially and is randomized, so that builds failing at the same time do not retry at the same time.
+ */
+public class RetryPolicy
+{
+
+    private static final RetryPolicy NO_RETRY = new RetryPolicy( 1, 0L, 0L, 0.0 );
+
+    private final int maxAttempts;
+
+    private final long initialBackoffMilliseconds;
+
+    private final long maxBackoffMilliseconds;
+
+    private final double jitter;
+
+    /**
+     * @param maxAttempts total number of attempts, including the first one
+     * @param initialBackoffMilliseconds delay before the second attempt, doubled for each following attempt
+     * @param maxBackoffMilliseconds upper bound of the delay between two attempts
+     * @param jitter fraction of the delay that is randomized, between 0 and 1
+     */
+    public RetryPolicy( int maxAttempts, long initialBackoffMilliseconds, long maxBackoffMilliseconds,
+                        double jitter )
+    {
+        if ( maxAttempts < 1 )
+        {
+            throw new IllegalArgumentException( "At least one attempt is required: " + maxAttempts );
+        }
+        if ( jitter < 0.0 || jitter > 1.0 )
+        {
+            throw new IllegalArgumentException( "Jitter must be between 0 and 1: " + jitter );
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMilliseconds = initialBackoffMilliseconds;
+        this.maxBackoffMilliseconds = maxBackoffMilliseconds;
+        this.jitter = jitter;
+    }
+
+    public static RetryPolicy noRetry()
+    {
+        return NO_RETRY;
+    }
+
+    public int getMaxAttempts()
+    {
+        return maxAttempts;
+    }
+
+    /**
+     * @param attempt number of the attempt that just failed, starting at 1
+     * @return the delay to wait before the next attempt
+     */
+    long backoff( int attempt, Random random )
+    {
+        double delay = initialBackoffMilliseconds;
+        for ( int i = 1; i < attempt && delay < maxBackoffMilliseconds; i++ )
+        {
+            delay *= 2;
+        }
+        delay = Math.min( delay, maxBackoffMilliseconds );
+        return (long) ( delay * ( 1.0 - jitter ) + delay * jitter * random.nextDouble() );
+    }
+}
@@ -0,0 +1,123 @@
+package org.codehaus.mojo.sonar;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Date;
+import java.util.Random;
+
+/**
+ * {@link HttpTransport} that retries failed requests according to a {@link RetryPolicy} and, when given a
+ * {@link CircuitBreaker}, fails fast while the server is known to be down.
+ */
+public class RetryingHttpTransport
+    implements HttpTransport
+{
+
+    private final HttpTransport delegate;
+
+    private final RetryPolicy policy;
+
+    private final CircuitBreaker circuitBreaker;
+
+    private final Random random = new Random();
+
+    /**
+     * @param circuitBreaker optional circuit breaker, null to always send requests
+     */
+    public RetryingHttpTransport( HttpTransport delegate, RetryPolicy policy, CircuitBreaker circuitBreaker )
+    {
+        this.delegate = delegate;
+        this.policy = policy;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public String get( String url )
+        throws IOException
+    {
+        if ( circuitBreaker != null )
+        {
+            long openUntil = circuitBreaker.openUntil();
+            if ( openUntil > 0L )
+            {
+                throw new IOException( "Requests to " + url + " are suspended until " + new Date( openUntil )
+                    + " because the server failed to answer during previous builds" );
+            }
+        }
+        IOException failure;
+        int attempt = 1;
+        while ( true )
+        {
+            try
+            {
+                String result = delegate.get( url );
+                if ( circuitBreaker != null )
+                {
+                    circuitBreaker.recordSuccess();
+                }
+                return result;
+            }
+            catch ( HttpStatusException e )
+            {
+                if ( !e.isTransient() )
+                {
+                    // the server is up and answers, there is no point in retrying nor in opening the circuit
+                    throw e;
+                }
+                failure = e;
+            }
+            catch ( IOException e )
+            {
+                failure = e;
+            }
+            if ( attempt >= policy.getMaxAttempts() )
+            {
+                break;
+            }
+            sleep( policy.backoff( attempt, random ) );
+            attempt++;
+        }
+        if ( circuitBreaker != null )
+        {
+            circuitBreaker.recordFailure();
+        }
+        throw failure;
+    }
+
+    private static void sleep( long milliseconds )
+        throws InterruptedIOException
+    {
+        try
+        {
+            Thread.sleep( milliseconds );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while waiting to retry" );
+        }
+    }
+}
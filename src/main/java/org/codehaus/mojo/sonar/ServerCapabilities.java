@@ -0,0 +1,137 @@
+package org.codehaus.mojo.sonar;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.apache.maven.artifact.versioning.ArtifactVersion;
+import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Immutable snapshot of the features supported by a SonarQube server, computed once from its version.
+ */
+public final class ServerCapabilities
+    implements Serializable
+{
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Features of the server that the plugin depends on, with the first version of SonarQube supporting them.
+     */
+    public enum Feature
+    {
+        MAVEN_3( 2, 4 ),
+        MAVEN_3_1( 3, 7 ),
+        RUNNER_BOOTSTRAPPING( 4, 3 ),
+        FILES_AS_SOURCES( 4, 5 ),
+        NEW_DEPENDENCY_PROPERTY( 5, 0 );
+
+        private final int major;
+
+        private final int minor;
+
+        private Feature( int major, int minor )
+        {
+            this.major = major;
+            this.minor = minor;
+        }
+
+        boolean isSupportedBy( ArtifactVersion version )
+        {
+            return version.getMajorVersion() > major || version.getMajorVersion() == major
+                && version.getMinorVersion() >= minor;
+        }
+    }
+
+    private final String version;
+
+    private final Set<Feature> features;
+
+    private ServerCapabilities( String version, Set<Feature> features )
+    {
+        this.version = version;
+        this.features = Collections.unmodifiableSet( features );
+    }
+
+    public static ServerCapabilities of( String version )
+    {
+        ArtifactVersion artifactVersion = new DefaultArtifactVersion( version );
+        Set<Feature> features = EnumSet.noneOf( Feature.class );
+        for ( Feature feature : Feature.values() )
+        {
+            if ( feature.isSupportedBy( artifactVersion ) )
+            {
+                features.add( feature );
+            }
+        }
+        return new ServerCapabilities( version, features );
+    }
+
+    public String getVersion()
+    {
+        return version;
+    }
+
+    public boolean supports( Feature feature )
+    {
+        return features.contains( feature );
+    }
+
+    public Set<Feature> getFeatures()
+    {
+        return features;
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+        if ( this == o )
+        {
+            return true;
+        }
+        if ( !( o instanceof ServerCapabilities ) )
+        {
+            return false;
+        }
+        ServerCapabilities other = (ServerCapabilities) o;
+        return version.equals( other.version ) && features.equals( other.features );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return version.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SonarQube " + version + " " + features;
+    }
+}
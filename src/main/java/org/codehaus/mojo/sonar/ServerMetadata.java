@@ -24,15 +24,14 @@ package org.codehaus.mojo.sonar;
  * SOFTWARE.
  */
 
-import org.apache.maven.artifact.versioning.ArtifactVersion;
-import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
 import org.apache.maven.plugin.logging.Log;
-import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.mojo.sonar.ServerCapabilities.Feature;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 public class ServerMetadata
 {
@@ -43,10 +42,39 @@ public class ServerMetadata
 
     private String url;
 
-    private String version;
+    private ServerCapabilities capabilities;
+
+    private final HttpTransport transport;
+
+    private final ServerMetadataCache cache;
+
+    private Future<ServerCapabilities> pendingCapabilities;
+
+    private ServerCapabilities pinnedCapabilities;
+
+    private boolean verifyPinnedCapabilities;
 
     public ServerMetadata( String url )
     {
+        this( url, null );
+    }
+
+    /**
+     * @param cache optional cache of the server metadata, shared between builds
+     */
+    public ServerMetadata( String url, ServerMetadataCache cache )
+    {
+        this( url, DefaultHttpTransport.getInstance(), cache );
+    }
+
+    /**
+     * @param transport transport used to query the server
+     * @param cache optional cache of the server metadata, shared between builds
+     */
+    public ServerMetadata( String url, HttpTransport transport, ServerMetadataCache cache )
+    {
+        this.transport = transport;
+        this.cache = cache;
         if ( url.endsWith( "/" ) )
         {
             this.url = url.substring( 0, url.length() - 1 );
@@ -57,21 +85,164 @@ public class ServerMetadata
         }
     }
 
+    /**
+     * Trusts the given version instead of querying the server, so that the analysis can start right away.
+     *
+     * @param verify whether the real version is queried and checked by {@link #verifyPinnedVersion()}, otherwise the
+     *            server is never queried for its version
+     */
+    public synchronized void pinVersion( String version, boolean verify )
+    {
+        pinnedCapabilities = ServerCapabilities.of( version );
+        verifyPinnedCapabilities = verify;
+    }
+
+    /**
+     * Fails if the version pinned by {@link #pinVersion(String, boolean)} does not have the same features as the
+     * version of the server. Does nothing if no version is pinned, or if its verification was not requested.
+     */
+    public synchronized void verifyPinnedVersion()
+    {
+        if ( pinnedCapabilities == null || !verifyPinnedCapabilities )
+        {
+            return;
+        }
+        ServerCapabilities actual = getServerCapabilities();
+        if ( !actual.getFeatures().equals( pinnedCapabilities.getFeatures() ) )
+        {
+            throw new IllegalStateException( "SonarQube server at " + url + " is version " + actual.getVersion()
+                + " but the analysis was prepared for version " + pinnedCapabilities.getVersion()
+                + ". Please check the parameter 'sonar.server.version'." );
+        }
+    }
+
+    /**
+     * Starts querying the version of the server in background, so that callers can do other work meanwhile.
+     * {@link #getVersion()} then waits for the result.
+     */
+    public synchronized void prefetchVersion()
+    {
+        if ( capabilities != null || pendingCapabilities != null
+            || pinnedCapabilities != null && !verifyPinnedCapabilities )
+        {
+            return;
+        }
+        FutureTask<ServerCapabilities> task = new FutureTask<ServerCapabilities>( new Callable<ServerCapabilities>()
+        {
+            public ServerCapabilities call()
+            {
+                return fetchCapabilities();
+            }
+        } );
+        Thread thread = new Thread( task, "sonar-server-version" );
+        thread.setDaemon( true );
+        thread.start();
+        pendingCapabilities = task;
+    }
+
     public String getVersion()
     {
-        if ( version == null )
+        return getCapabilities().getVersion();
+    }
+
+    /**
+     * @return the features supported by the server, computed once per build
+     */
+    public synchronized ServerCapabilities getCapabilities()
+    {
+        if ( pinnedCapabilities != null )
+        {
+            return pinnedCapabilities;
+        }
+        return getServerCapabilities();
+    }
+
+    /**
+     * @return the features of the server when they are known without querying it: pinned version, version already
+     *         queried or cached on disk. Null otherwise.
+     */
+    public synchronized ServerCapabilities getKnownCapabilities()
+    {
+        if ( pinnedCapabilities != null )
+        {
+            return pinnedCapabilities;
+        }
+        if ( capabilities != null || cache == null )
+        {
+            return capabilities;
+        }
+        return cache.getCapabilities( url );
+    }
+
+    private ServerCapabilities getServerCapabilities()
+    {
+        if ( capabilities == null )
+        {
+            if ( pendingCapabilities != null )
+            {
+                Future<ServerCapabilities> pending = pendingCapabilities;
+                // a failed prefetch is not remembered, next call queries the server again
+                pendingCapabilities = null;
+                capabilities = await( pending );
+            }
+            else
+            {
+                capabilities = fetchCapabilities();
+            }
+        }
+        return capabilities;
+    }
+
+    private ServerCapabilities fetchCapabilities()
+    {
+        ServerCapabilities result = null;
+        if ( cache != null )
+        {
+            result = cache.getCapabilities( url );
+        }
+        if ( result == null )
         {
             try
             {
-                version = remoteContent( "/api/server/version" );
+                result = ServerCapabilities.of( remoteContent( "/api/server/version" ) );
             }
             catch ( IOException e )
             {
                 throw new IllegalStateException( "SonarQube server can not be reached at " + url
                     + ". Please check the parameter 'sonar.host.url'.", e );
             }
+            if ( cache != null )
+            {
+                cache.putCapabilities( url, result );
+            }
+        }
+        return result;
+    }
+
+    private static <T> T await( Future<T> pending )
+    {
+        try
+        {
+            return pending.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( "Interrupted while querying the SonarQube server", e );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException( cause );
         }
-        return version;
     }
 
     public String getUrl()
@@ -87,95 +258,76 @@ public class ServerMetadata
     protected String remoteContent( String path )
         throws IOException
     {
-        String fullUrl = url + path;
-        HttpURLConnection conn = getConnection( fullUrl, "GET" );
-        InputStream input = (InputStream) conn.getContent();
-        try
-        {
-            int statusCode = conn.getResponseCode();
-            if ( statusCode != HttpURLConnection.HTTP_OK )
-            {
-                throw new IOException( "Status returned by url : '" + fullUrl + "' is invalid : " + statusCode );
-            }
-            return IOUtil.toString( input );
-
-        }
-        finally
-        {
-            IOUtil.close( input );
-            conn.disconnect();
-        }
-    }
-
-    static HttpURLConnection getConnection( String url, String method )
-        throws IOException
-    {
-        URL page = new URL( url );
-        HttpURLConnection conn = (HttpURLConnection) page.openConnection();
-        HttpsTrust.INSTANCE.trust( conn );
-        conn.setConnectTimeout( CONNECT_TIMEOUT_MILLISECONDS );
-        conn.setReadTimeout( READ_TIMEOUT_MILLISECONDS );
-        conn.setRequestMethod( method );
-        conn.connect();
-        return conn;
+        return transport.get( url + path );
     }
 
     public boolean supportsMaven3()
     {
-        return !isVersionPriorTo2Dot4( getVersion() );
+        return getCapabilities().supports( Feature.MAVEN_3 );
     }
 
     public boolean supportsMaven3_1()
     {
-        return !isVersionPriorTo3Dot7( getVersion() );
+        return getCapabilities().supports( Feature.MAVEN_3_1 );
     }
 
     public boolean supportsSonarQubeRunnerBootstrappingFromMaven()
     {
-        return !isVersionPriorTo4Dot3( getVersion() );
+        return getCapabilities().supports( Feature.RUNNER_BOOTSTRAPPING );
     }
 
     public boolean supportsNewDependencyProperty()
     {
-        return !isVersionPriorTo5Dot0( getVersion() );
+        return getCapabilities().supports( Feature.NEW_DEPENDENCY_PROPERTY );
     }
 
     public boolean supportsFilesAsSources()
     {
-        return !isVersionPriorTo4Dot5( getVersion() );
+        return getCapabilities().supports( Feature.FILES_AS_SOURCES );
     }
 
+    /**
+     * @deprecated use {@link ServerCapabilities}
+     */
+    @Deprecated
     public static boolean isVersionPriorTo2Dot4( String version )
     {
-        ArtifactVersion artifactVersion = new DefaultArtifactVersion( version );
-        return artifactVersion.getMajorVersion() < 2 || artifactVersion.getMajorVersion() == 2
-            && artifactVersion.getMinorVersion() < 4;
+        return !ServerCapabilities.of( version ).supports( Feature.MAVEN_3 );
     }
 
+    /**
+     * @deprecated use {@link ServerCapabilities}
+     */
+    @Deprecated
     public static boolean isVersionPriorTo3Dot7( String version )
     {
-        ArtifactVersion artifactVersion = new DefaultArtifactVersion( version );
-        return artifactVersion.getMajorVersion() < 3 || artifactVersion.getMajorVersion() == 3
-            && artifactVersion.getMinorVersion() < 7;
+        return !ServerCapabilities.of( version ).supports( Feature.MAVEN_3_1 );
     }
 
+    /**
+     * @deprecated use {@link ServerCapabilities}
+     */
+    @Deprecated
     public static boolean isVersionPriorTo4Dot3( String version )
     {
-        ArtifactVersion artifactVersion = new DefaultArtifactVersion( version );
-        return artifactVersion.getMajorVersion() < 4 || artifactVersion.getMajorVersion() == 4
-            && artifactVersion.getMinorVersion() < 3;
+        return !ServerCapabilities.of( version ).supports( Feature.RUNNER_BOOTSTRAPPING );
     }
 
+    /**
+     * @deprecated use {@link ServerCapabilities}
+     */
+    @Deprecated
     public static boolean isVersionPriorTo5Dot0( String version )
     {
-        ArtifactVersion artifactVersion = new DefaultArtifactVersion( version );
-        return artifactVersion.getMajorVersion() < 5;
+        return !ServerCapabilities.of( version ).supports( Feature.NEW_DEPENDENCY_PROPERTY );
     }
 
+    /**
+     * @deprecated use {@link ServerCapabilities}
+     */
+    @Deprecated
     public static boolean isVersionPriorTo4Dot5( String version )
     {
-        ArtifactVersion artifactVersion = new DefaultArtifactVersion( version );
-        return artifactVersion.getMajorVersion() < 4 || artifactVersion.getMajorVersion() == 4
-            && artifactVersion.getMinorVersion() < 5;
+        return !ServerCapabilities.of( version ).supports( Feature.FILES_AS_SOURCES );
     }
 }
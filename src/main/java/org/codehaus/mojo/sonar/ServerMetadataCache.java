@@ -0,0 +1,82 @@
+package org.codehaus.mojo.sonar;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * On-disk cache of the metadata returned by a SonarQube server, keyed by server URL. Entries are written
+ * atomically, so several builds running on the same machine can share the cache directory.
+ */
+public class ServerMetadataCache
+{
+
+    private static final String VERSION = "version";
+
+    private final PropertiesStore store;
+
+    private final long ttlMilliseconds;
+
+    public ServerMetadataCache( File directory, long ttlMilliseconds )
+    {
+        this.store = new PropertiesStore( directory );
+        this.ttlMilliseconds = ttlMilliseconds;
+    }
+
+    public static File defaultDirectory()
+    {
+        return new File( PropertiesStore.sonarUserHome(), "cache/server-metadata" );
+    }
+
+    /**
+     * @return the cached capabilities of the server, or null if unknown or expired
+     */
+    public ServerCapabilities getCapabilities( String url )
+    {
+        PropertiesStore.Entry entry = store.read( url );
+        if ( entry == null || entry.isOlderThan( ttlMilliseconds ) || entry.getProperty( VERSION ) == null )
+        {
+            return null;
+        }
+        return ServerCapabilities.of( entry.getProperty( VERSION ) );
+    }
+
+    /**
+     * Only the version is persisted: features are computed again when reading the cache, so that an upgrade of the
+     * plugin takes the features it knows about into account.
+     */
+    public void putCapabilities( String url, ServerCapabilities capabilities )
+    {
+        try
+        {
+            store.write( url, VERSION, capabilities.getVersion() );
+        }
+        catch ( IOException e )
+        {
+            // the cache is only an optimization, the next build will query the server again
+        }
+    }
+}
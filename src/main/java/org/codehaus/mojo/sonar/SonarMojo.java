@@ -25,6 +25,7 @@ package org.codehaus.mojo.sonar;
  */
 
 import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.lang.StringUtils;
 import org.apache.maven.artifact.factory.ArtifactFactory;
 import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
 import org.apache.maven.artifact.repository.ArtifactRepository;
@@ -45,11 +46,13 @@ import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.MavenProjectBuilder;
 import org.apache.maven.rtinfo.RuntimeInformation;
 import org.apache.maven.shared.dependency.tree.DependencyTreeBuilder;
+import org.codehaus.mojo.sonar.ServerCapabilities.Feature;
 import org.codehaus.mojo.sonar.bootstrap.InternalMojoBootstraper;
 import org.codehaus.mojo.sonar.bootstrap.RunnerBootstraper;
 import org.sonatype.plexus.components.sec.dispatcher.SecDispatcher;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Analyze project. SonarQube server must be started.
@@ -61,6 +64,8 @@ public class SonarMojo
     extends AbstractMojo
 {
 
+    private static final long MAX_RETRY_BACKOFF = 30000L;
+
     @Parameter( defaultValue = "${project}", readonly = true )
     protected MavenProject project;
 
@@ -81,6 +86,92 @@ public class SonarMojo
     @Parameter( property = "sonar.skip", defaultValue = "false", alias = "sonar.skip" )
     private boolean skip;
 
+    /**
+     * Version of the SonarQube server. When set, the analysis is prepared for this version without querying the
+     * server for its version.
+     *
+     * @since 2.5
+     */
+    @Parameter( property = "sonar.server.version" )
+    private String serverVersion;
+
+    /**
+     * Checks the version given by 'sonar.server.version' against the server before the analysis starts, the server
+     * being queried in background while the reactor is converted. Set this to 'false' to never query the server for
+     * its version when it is pinned.
+     *
+     * @since 2.5
+     */
+    @Parameter( property = "sonar.server.verifyVersion", defaultValue = "true" )
+    private boolean verifyServerVersion;
+
+    /**
+     * Number of seconds the version of the SonarQube server is cached on disk, so that following builds
+     * do not need to query it. Set to 0 to disable the cache.
+     *
+     * @since 2.5
+     */
+    @Parameter( property = "sonar.serverMetadata.cacheTtl", defaultValue = "0" )
+    private int serverMetadataCacheTtl;
+
+    /**
+     * Timeout, in milliseconds, to connect to the SonarQube server. Applies to each attempt.
+     *
+     * @since 2.5
+     */
+    @Parameter( property = "sonar.http.connectTimeout", defaultValue = "30000" )
+    private int connectTimeout;
+
+    /**
+     * Timeout, in milliseconds, to read the response of the SonarQube server. Applies to each attempt.
+     *
+     * @since 2.5
+     */
+    @Parameter( property = "sonar.http.readTimeout", defaultValue = "60000" )
+    private int readTimeout;
+
+    /**
+     * Certificates trusted on HTTPS connections to the SonarQube server: 'all' to trust any certificate and host
+     * name, or 'jvm' to rely on the trust store of the JVM.
+     *
+     * @since 2.5
+     */
+    @Parameter( property = "sonar.ssl.trustMode", defaultValue = "all" )
+    private String sslTrustMode;
+
+    /**
+     * Number of times a failed request to the SonarQube server is retried.
+     *
+     * @since 2.5
+     */
+    @Parameter( property = "sonar.http.retries", defaultValue = "0" )
+    private int retries;
+
+    /**
+     * Delay, in milliseconds, before the first retry. It is doubled, and randomized, for each following retry.
+     *
+     * @since 2.5
+     */
+    @Parameter( property = "sonar.http.retryBackoff", defaultValue = "1000" )
+    private long retryBackoff;
+
+    /**
+     * Number of consecutive builds that must fail to reach the SonarQube server before the following builds on the
+     * same machine fail without trying. Set to 0 to disable.
+     *
+     * @since 2.5
+     */
+    @Parameter( property = "sonar.http.circuitBreakerThreshold", defaultValue = "0" )
+    private int circuitBreakerThreshold;
+
+    /**
+     * Number of seconds during which builds fail fast once the circuit breaker has opened.
+     *
+     * @since 2.5
+     */
+    @Parameter( property = "sonar.http.circuitBreakerDuration", defaultValue = "60" )
+    private int circuitBreakerDuration;
+
     @Component
     protected MavenPluginManager mavenPluginManager;
 
@@ -122,9 +213,37 @@ public class SonarMojo
             getLog().info( "sonar.skip = true: Skipping analysis" );
             return;
         }
+        TrustMode trustMode;
+        try
+        {
+            trustMode = TrustMode.fromString( sslTrustMode );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            throw new MojoExecutionException( e.getMessage(), e );
+        }
         try
         {
-            ServerMetadata server = new ServerMetadata( sonarHostURL );
+            ServerMetadata server =
+                new ServerMetadata( sonarHostURL, createHttpTransport( trustMode ), createServerMetadataCache() );
+            if ( StringUtils.isNotBlank( serverVersion ) )
+            {
+                server.pinVersion( serverVersion, verifyServerVersion );
+            }
+            // Does nothing with a pinned version, unless it is verified before the analysis starts
+            server.prefetchVersion();
+
+            RunnerBootstraper runnerBootstraper =
+                new RunnerBootstraper( runtimeInformation, getLog(), session, lifecycleExecutor, artifactFactory,
+                                       localRepository, artifactMetadataSource, artifactCollector,
+                                       dependencyTreeBuilder, projectBuilder, securityDispatcher, server );
+            ServerCapabilities known = server.getKnownCapabilities();
+            if ( known == null || known.supports( Feature.RUNNER_BOOTSTRAPPING ) )
+            {
+                // Convert the reactor while the server is queried, for the latest features if its version is unknown
+                runnerBootstraper.prepare( known );
+            }
+
             server.logSettings( getLog() );
 
             String mavenVersion = runtimeInformation.getMavenVersion();
@@ -133,9 +252,7 @@ public class SonarMojo
 
             if ( server.supportsSonarQubeRunnerBootstrappingFromMaven() )
             {
-                new RunnerBootstraper( runtimeInformation, getLog(), session, lifecycleExecutor,
-                                       artifactFactory, localRepository, artifactMetadataSource, artifactCollector,
-                                       dependencyTreeBuilder, projectBuilder, securityDispatcher, server ).execute();
+                runnerBootstraper.execute();
             }
             else
             {
@@ -150,6 +267,34 @@ public class SonarMojo
         }
     }
 
+    private HttpTransport createHttpTransport( TrustMode trustMode )
+    {
+        HttpTransport transport = new DefaultHttpTransport( connectTimeout, readTimeout, trustMode );
+        if ( retries <= 0 && circuitBreakerThreshold <= 0 )
+        {
+            return transport;
+        }
+        RetryPolicy policy = new RetryPolicy( Math.max( retries, 0 ) + 1, retryBackoff, MAX_RETRY_BACKOFF, 0.5 );
+        CircuitBreaker circuitBreaker = null;
+        if ( circuitBreakerThreshold > 0 )
+        {
+            circuitBreaker =
+                new CircuitBreaker( CircuitBreaker.defaultDirectory(), sonarHostURL, circuitBreakerThreshold,
+                                    TimeUnit.SECONDS.toMillis( circuitBreakerDuration ) );
+        }
+        return new RetryingHttpTransport( transport, policy, circuitBreaker );
+    }
+
+    private ServerMetadataCache createServerMetadataCache()
+    {
+        if ( serverMetadataCacheTtl <= 0 )
+        {
+            return null;
+        }
+        return new ServerMetadataCache( ServerMetadataCache.defaultDirectory(),
+                                        TimeUnit.SECONDS.toMillis( serverMetadataCacheTtl ) );
+    }
+
     @VisibleForTesting
     void checkVersionRequirements( ServerMetadata server, String mavenVersion )
         throws IOException, MojoExecutionException
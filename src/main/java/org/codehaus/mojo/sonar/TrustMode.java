@@ -0,0 +1,54 @@
+package org.codehaus.mojo.sonar;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Which certificates and host names are trusted on HTTPS connections to the SonarQube server.
+ */
+public enum TrustMode
+{
+    /**
+     * Trust any certificate and any host name. This is the historical behavior of the plugin.
+     */
+    ALL,
+
+    /**
+     * Rely on the trust store and host name verification of the JVM, configured with the usual
+     * <code>javax.net.ssl.trustStore</code> system properties.
+     */
+    JVM;
+
+    public static TrustMode fromString( String mode )
+    {
+        for ( TrustMode trustMode : values() )
+        {
+            if ( trustMode.name().equalsIgnoreCase( mode.trim() ) )
+            {
+                return trustMode;
+            }
+        }
+        throw new IllegalArgumentException( "Unknown SSL trust mode '" + mode + "', expected 'all' or 'jvm'" );
+    }
+}
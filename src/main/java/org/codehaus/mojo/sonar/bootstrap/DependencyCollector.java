@@ -1,30 +1,57 @@
 package org.codehaus.mojo.sonar.bootstrap;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Sets;
 import org.apache.maven.artifact.factory.ArtifactFactory;
 import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
 import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.artifact.resolver.ArtifactCollector;
+import org.apache.maven.model.DependencyManagement;
+import org.apache.maven.model.Exclusion;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.shared.dependency.tree.DependencyNode;
 import org.apache.maven.shared.dependency.tree.DependencyTreeBuilder;
 import org.apache.maven.shared.dependency.tree.DependencyTreeBuilderException;
-import org.apache.maven.shared.dependency.tree.filter.AncestorOrSelfDependencyNodeFilter;
 import org.apache.maven.shared.dependency.tree.filter.DependencyNodeFilter;
 import org.apache.maven.shared.dependency.tree.filter.StateDependencyNodeFilter;
-import org.apache.maven.shared.dependency.tree.traversal.BuildingDependencyNodeVisitor;
 import org.apache.maven.shared.dependency.tree.traversal.CollectingDependencyNodeVisitor;
-import org.apache.maven.shared.dependency.tree.traversal.DependencyNodeVisitor;
 import org.apache.maven.shared.dependency.tree.traversal.FilteringDependencyNodeVisitor;
 
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Deque;
+import java.security.MessageDigest;
 import java.util.Iterator;
-import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DependencyCollector
 {
 
+    /**
+     * Where the trees of dependencies come from
+     */
+    public enum Mode
+    {
+        /**
+         * Artifacts resolved by Maven for the project, or the legacy tree builder when they are not available
+         */
+        AUTO,
+        /**
+         * Artifacts resolved by Maven for the project only
+         */
+        SESSION,
+        /**
+         * Legacy tree builder, resolving the dependencies again
+         */
+        LEGACY
+    }
+
     private final DependencyTreeBuilder dependencyTreeBuilder;
 
     private final ArtifactFactory artifactFactory;
@@ -35,170 +62,294 @@ public class DependencyCollector
 
     private final ArtifactCollector artifactCollector;
 
+    /**
+     * Dependencies already resolved during the build, by fingerprint of the inputs of the resolution
+     */
+    private final ConcurrentMap<String, Future<ResolvedDependencies>> resolved =
+        new ConcurrentHashMap<String, Future<ResolvedDependencies>>();
+
+    private final Interner<String> interner = Interners.newStrongInterner();
+
+    private final AtomicLong trees = new AtomicLong();
+
+    private final AtomicLong reused = new AtomicLong();
+
+    private final AtomicLong fromSession = new AtomicLong();
+
+    private final Mode mode;
+
     public DependencyCollector( DependencyTreeBuilder dependencyTreeBuilder,
                                 ArtifactFactory artifactFactory, ArtifactRepository localRepository,
                                 ArtifactMetadataSource artifactMetadataSource, ArtifactCollector artifactCollector )
     {
+        this( dependencyTreeBuilder, artifactFactory, localRepository, artifactMetadataSource, artifactCollector,
+              Mode.LEGACY );
+    }
+
+    /**
+     * @param mode where the trees of dependencies come from
+     */
+    public DependencyCollector( DependencyTreeBuilder dependencyTreeBuilder,
+                                ArtifactFactory artifactFactory, ArtifactRepository localRepository,
+                                ArtifactMetadataSource artifactMetadataSource, ArtifactCollector artifactCollector,
+                                Mode mode )
+    {
+        this.mode = mode;
         this.dependencyTreeBuilder = dependencyTreeBuilder;
         this.artifactFactory = artifactFactory;
         this.localRepository = localRepository;
-        this.artifactMetadataSource = artifactMetadataSource;
+        this.artifactMetadataSource =
+            artifactMetadataSource != null ? new SynchronizedMetadataSource( artifactMetadataSource ) : null;
         this.artifactCollector = artifactCollector;
     }
 
-    private static class Dependency
+    /**
+     * Dependencies of a project, along with the keys of all of them
+     */
+    private static class ResolvedDependencies
     {
 
-        private final String key;
-
-        private final String version;
+        private final String json;
 
-        private String scope;
+        private final Set<String> keys;
 
-        List<Dependency> dependencies = new ArrayList<Dependency>();
+        private final boolean shareable;
 
-        public Dependency( String key, String version )
+        ResolvedDependencies( String json, Set<String> keys, boolean shareable )
         {
-            this.key = key;
-            this.version = version;
+            this.json = json;
+            this.keys = keys;
+            this.shareable = shareable;
         }
+    }
 
-        public String key()
+    private DependencyNode buildDependencyTree( MavenProject project )
+    {
+        try
         {
-            return key;
+            return dependencyTreeBuilder.buildDependencyTree( project, localRepository, artifactFactory,
+                                                              artifactMetadataSource, null, artifactCollector );
         }
-
-        public String version()
+        catch ( DependencyTreeBuilderException e )
         {
-            return version;
+            throw new IllegalStateException( "Can not load the graph of dependencies of the project "
+                + project, e );
         }
+    }
 
-        public String scope()
-        {
-            return scope;
-        }
+    /**
+     * Writes the dependencies included in the given tree, each library being written once
+     */
+    @VisibleForTesting
+    static void writeJson( DependencyNode root, DependencyJsonWriter writer )
+    {
+        // mode verbose OFF : do not show the same lib many times
+        CollectingDependencyNodeVisitor collectingVisitor = new CollectingDependencyNodeVisitor();
+        root.accept( new FilteringDependencyNodeVisitor( collectingVisitor, StateDependencyNodeFilter.INCLUDED ) );
 
-        public Dependency setScope( String scope )
+        // same as AncestorOrSelfDependencyNodeFilter, without walking up the tree for each node
+        final Set<DependencyNode> kept = Sets.newIdentityHashSet();
+        for ( Object included : collectingVisitor.getNodes() )
         {
-            this.scope = scope;
-            return this;
+            for ( DependencyNode node = (DependencyNode) included; node != null && kept.add( node ); )
+            {
+                node = node.getParent();
+            }
         }
-
-        public List<Dependency> dependencies()
+        root.accept( new FilteringDependencyNodeVisitor( writer, new DependencyNodeFilter()
         {
-            return dependencies;
-        }
+            public boolean accept( DependencyNode node )
+            {
+                return kept.contains( node );
+            }
+        } ) );
     }
 
-    private List<Dependency> collectProjectDependencies( MavenProject project )
+    /**
+     * Can be called by several threads, the calls to the legacy metadata source being serialized. The modules having
+     * the same direct dependencies, dependency management and repositories get the same tree, which is only resolved
+     * once.
+     */
+    public String toJson( final MavenProject project )
     {
-        final List<Dependency> result = new ArrayList<Dependency>();
-        try
+        if ( mode != Mode.LEGACY )
         {
-            DependencyNode root =
-                dependencyTreeBuilder.buildDependencyTree( project, localRepository, artifactFactory,
-                                                           artifactMetadataSource, null, artifactCollector );
-
-            DependencyNodeVisitor visitor = new BuildingDependencyNodeVisitor( new DependencyNodeVisitor()
+            DependencyNode root = SessionDependencyTree.of( project );
+            if ( root != null )
             {
-
-                private Deque<Dependency> stack = new ArrayDeque<Dependency>();
-
-                public boolean visit( DependencyNode node )
+                StringBuilder json = new StringBuilder();
+                write( root, json );
+                fromSession.incrementAndGet();
+                return json.toString();
+            }
+            if ( mode == Mode.SESSION )
+            {
+                throw new IllegalStateException( "The dependencies of the project " + project
+                    + " were not resolved by Maven. Please check the parameter 'sonar.maven.dependencyCollector'." );
+            }
+        }
+        String fingerprint = fingerprint( project );
+        String projectKey = interner.intern( project.getGroupId() + ":" + project.getArtifactId() );
+        Future<ResolvedDependencies> memo = resolved.get( fingerprint );
+        if ( memo == null )
+        {
+            FutureTask<ResolvedDependencies> task =
+                new FutureTask<ResolvedDependencies>( new Callable<ResolvedDependencies>()
                 {
-                    if ( node.getParent() != null && node.getParent() != node )
+                    public ResolvedDependencies call()
                     {
-                        Dependency dependency = toDependency( node );
-                        if ( stack.isEmpty() )
-                        {
-                            result.add( dependency );
-                        }
-                        else
-                        {
-                            stack.peek().dependencies().add( dependency );
-                        }
-                        stack.push( dependency );
+                        return resolve( project );
                     }
-                    return true;
+                } );
+            memo = resolved.putIfAbsent( fingerprint, task );
+            if ( memo == null )
+            {
+                task.run();
+                try
+                {
+                    return await( task ).json;
                 }
-
-                public boolean endVisit( DependencyNode node )
+                catch ( RuntimeException e )
                 {
-                    if ( !stack.isEmpty() )
-                    {
-                        stack.pop();
-                    }
-                    return true;
+                    // the modules waiting for this tree resolve their own
+                    resolved.remove( fingerprint, task );
+                    throw e;
                 }
-            } );
-
-            // mode verbose OFF : do not show the same lib many times
-            DependencyNodeFilter filter = StateDependencyNodeFilter.INCLUDED;
-
-            CollectingDependencyNodeVisitor collectingVisitor = new CollectingDependencyNodeVisitor();
-            DependencyNodeVisitor firstPassVisitor = new FilteringDependencyNodeVisitor( collectingVisitor, filter );
-            root.accept( firstPassVisitor );
-
-            DependencyNodeFilter secondPassFilter =
-                new AncestorOrSelfDependencyNodeFilter( collectingVisitor.getNodes() );
-            visitor = new FilteringDependencyNodeVisitor( visitor, secondPassFilter );
-
-            root.accept( visitor );
-
+            }
         }
-        catch ( DependencyTreeBuilderException e )
+        ResolvedDependencies dependencies;
+        try
         {
-            throw new IllegalStateException( "Can not load the graph of dependencies of the project "
-                + project, e );
+            dependencies = await( memo );
         }
-        return result;
+        catch ( RuntimeException e )
+        {
+            if ( Thread.currentThread().isInterrupted() )
+            {
+                throw e;
+            }
+            // the failure is reported by the module whose tree could not be resolved
+            dependencies = null;
+        }
+        // a project is not part of its own tree, so a tree including it can not be reused
+        if ( dependencies != null && dependencies.shareable && !dependencies.keys.contains( projectKey ) )
+        {
+            reused.incrementAndGet();
+            return dependencies.json;
+        }
+        return resolve( project ).json;
     }
 
-    private Dependency toDependency( DependencyNode node )
+    @Override
+    public String toString()
     {
-        String key = String.format( "%s:%s", node.getArtifact().getGroupId(), node.getArtifact().getArtifactId() );
-        String version = node.getArtifact().getBaseVersion();
-        return new Dependency( key, version ).setScope( node.getArtifact().getScope() );
+        return "Dependency trees: " + trees.get() + " resolved, " + reused.get() + " reused, " + fromSession.get()
+            + " from the session";
     }
 
-    public String toJson( MavenProject project )
+    private ResolvedDependencies resolve( MavenProject project )
     {
-        return dependenciesToJson( collectProjectDependencies( project ) );
+        DependencyNode root = buildDependencyTree( project );
+        StringBuilder json = new StringBuilder();
+        DependencyJsonWriter writer = write( root, json );
+        trees.incrementAndGet();
+        // otherwise the project itself took the place of one of its dependencies
+        boolean shareable = !contains( root, project );
+        return new ResolvedDependencies( json.toString(), writer.getKeys(), shareable );
     }
 
-    private String dependenciesToJson( List<Dependency> deps )
+    private DependencyJsonWriter write( DependencyNode root, StringBuilder json )
     {
-        StringBuilder json = new StringBuilder();
-        json.append( '[' );
-        serializeDeps( json, deps );
-        json.append( ']' );
-        return json.toString();
+        DependencyJsonWriter writer = new DependencyJsonWriter( json, interner );
+        writeJson( root, writer );
+        return writer;
+    }
+
+    private static ResolvedDependencies await( Future<ResolvedDependencies> memo )
+    {
+        try
+        {
+            return memo.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( "Interrupted while collecting dependencies", e );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException( cause );
+        }
     }
 
-    private void serializeDeps( StringBuilder json, List<Dependency> deps )
+    private static boolean contains( DependencyNode root, MavenProject project )
     {
-        for ( Iterator<Dependency> dependencyIt = deps.iterator(); dependencyIt.hasNext(); )
+        for ( Iterator<?> nodes = root.preorderIterator(); nodes.hasNext(); )
         {
-            serializeDep( json, dependencyIt.next() );
-            if ( dependencyIt.hasNext() )
+            DependencyNode node = (DependencyNode) nodes.next();
+            if ( node != root && project.getArtifactId().equals( node.getArtifact().getArtifactId() )
+                && project.getGroupId().equals( node.getArtifact().getGroupId() ) )
             {
-                json.append( ',' );
+                return true;
             }
         }
+        return false;
     }
 
-    private void serializeDep( StringBuilder json, Dependency dependency )
+    /**
+     * Inputs of the resolution of the dependency tree of a project, its own coordinates aside
+     */
+    private static String fingerprint( MavenProject project )
     {
-        json.append( "{" );
-        json.append( "\"k\":\"" );
-        json.append( dependency.key() );
-        json.append( "\",\"v\":\"" );
-        json.append( dependency.version() );
-        json.append( "\",\"s\":\"" );
-        json.append( dependency.scope() );
-        json.append( "\",\"d\":[" );
-        serializeDeps( json, dependency.dependencies() );
-        json.append( "]" );
-        json.append( "}" );
+        MessageDigest digest = ModulePropertiesCache.newDigest();
+        for ( org.apache.maven.model.Dependency dependency : project.getDependencies() )
+        {
+            updateDependency( digest, "dependency", dependency );
+        }
+        DependencyManagement management = project.getDependencyManagement();
+        if ( management != null )
+        {
+            for ( org.apache.maven.model.Dependency dependency : management.getDependencies() )
+            {
+                updateDependency( digest, "managed", dependency );
+            }
+        }
+        if ( project.getRemoteArtifactRepositories() != null )
+        {
+            for ( Object repository : project.getRemoteArtifactRepositories() )
+            {
+                ArtifactRepository remote = (ArtifactRepository) repository;
+                ModulePropertiesCache.update( digest, "repository " + remote.getId() + "=" + remote.getUrl() );
+            }
+        }
+        return ModulePropertiesCache.toHex( digest.digest() );
+    }
+
+    private static void updateDependency( MessageDigest digest, String kind,
+                                          org.apache.maven.model.Dependency dependency )
+    {
+        StringBuilder value =
+            new StringBuilder( kind ).append( ' ' ).append( dependency.getGroupId() ).append( ':' )
+                                     .append( dependency.getArtifactId() ).append( ':' )
+                                     .append( dependency.getType() ).append( ':' )
+                                     .append( dependency.getClassifier() ).append( ':' )
+                                     .append( dependency.getVersion() ).append( ':' )
+                                     .append( dependency.getScope() ).append( ':' )
+                                     .append( dependency.isOptional() ).append( ':' )
+                                     .append( dependency.getSystemPath() );
+        for ( Exclusion exclusion : dependency.getExclusions() )
+        {
+            value.append( " -" ).append( exclusion.getGroupId() ).append( ':' ).append( exclusion.getArtifactId() );
+        }
+        ModulePropertiesCache.update( digest, value.toString() );
     }
 }
@@ -0,0 +1,136 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.codehaus.mojo.sonar.bootstrap;
+
+import com.google.common.collect.Interner;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.shared.dependency.tree.DependencyNode;
+import org.apache.maven.shared.dependency.tree.traversal.DependencyNodeVisitor;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Writes the value of <code>sonar.maven.projectDependencies</code> while visiting a tree of dependencies, without
+ * building any intermediate structure. The root of the tree is the project itself, its children are the dependencies.
+ * Each dependency is written as <code>{"k":"groupId:artifactId","v":"version","s":"scope","d":[dependencies]}</code>.
+ */
+class DependencyJsonWriter
+    implements DependencyNodeVisitor
+{
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Appendable output;
+
+    private final Interner<String> interner;
+
+    private final Set<String> keys = new HashSet<String>();
+
+    private boolean separatorNeeded;
+
+    DependencyJsonWriter( Appendable output, Interner<String> interner )
+    {
+        this.output = output;
+        this.interner = interner;
+    }
+
+    /**
+     * @return keys of the dependencies written so far
+     */
+    Set<String> getKeys()
+    {
+        return keys;
+    }
+
+    public boolean visit( DependencyNode node )
+    {
+        try
+        {
+            if ( node.getParent() == null )
+            {
+                output.append( '[' );
+                return true;
+            }
+            if ( separatorNeeded )
+            {
+                output.append( ',' );
+            }
+            Artifact artifact = node.getArtifact();
+            String key = interner.intern( artifact.getGroupId() + ":" + artifact.getArtifactId() );
+            keys.add( key );
+            output.append( "{\"k\":\"" );
+            escape( key );
+            output.append( "\",\"v\":\"" );
+            escape( artifact.getBaseVersion() );
+            output.append( "\",\"s\":\"" );
+            escape( artifact.getScope() );
+            output.append( "\",\"d\":[" );
+            separatorNeeded = false;
+            return true;
+        }
+        catch ( IOException e )
+        {
+            throw new IllegalStateException( "Unable to write the dependencies", e );
+        }
+    }
+
+    public boolean endVisit( DependencyNode node )
+    {
+        try
+        {
+            output.append( node.getParent() == null ? "]" : "]}" );
+            separatorNeeded = true;
+            return true;
+        }
+        catch ( IOException e )
+        {
+            throw new IllegalStateException( "Unable to write the dependencies", e );
+        }
+    }
+
+    private void escape( String value )
+        throws IOException
+    {
+        if ( value == null )
+        {
+            // as written by previous versions
+            output.append( "null" );
+            return;
+        }
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            char c = value.charAt( i );
+            if ( c == '"' || c == '\\' )
+            {
+                output.append( '\\' ).append( c );
+            }
+            else if ( c < 0x20 )
+            {
+                output.append( "\\u00" ).append( HEX[c >> 4] ).append( HEX[c & 0xF] );
+            }
+            else
+            {
+                output.append( c );
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.codehaus.mojo.sonar.bootstrap;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Kind of the files probed during a build (missing, file or directory), so that the file system is queried once per
+ * distinct path, whatever the number of modules referencing it. Safe for concurrent use.
+ *
+ * @since 2.5
+ */
+public class FileAttributesCache
+{
+
+    private enum Kind
+    {
+        MISSING, FILE, DIRECTORY, OTHER
+    }
+
+    private final ConcurrentMap<String, Kind> kinds = new ConcurrentHashMap<String, Kind>();
+
+    private final AtomicLong probes = new AtomicLong();
+
+    public boolean exists( File file )
+    {
+        return kind( file ) != Kind.MISSING;
+    }
+
+    public boolean isDirectory( File file )
+    {
+        return kind( file ) == Kind.DIRECTORY;
+    }
+
+    public boolean isFile( File file )
+    {
+        return kind( file ) == Kind.FILE;
+    }
+
+    /**
+     * Probes the files not known yet, with the given number of threads.
+     */
+    public void prefetch( Collection<File> files, int threads )
+    {
+        final List<File> unknown = new ArrayList<File>();
+        for ( File file : files )
+        {
+            if ( !kinds.containsKey( file.getAbsolutePath() ) )
+            {
+                unknown.add( file );
+            }
+        }
+        if ( unknown.isEmpty() )
+        {
+            return;
+        }
+        int poolSize = Math.max( 1, Math.min( threads, unknown.size() ) );
+        ExecutorService executor =
+            Executors.newFixedThreadPool( poolSize, new ThreadFactoryBuilder().setNameFormat( "sonar-file-probe-%d" )
+                                                                              .setDaemon( true ).build() );
+        try
+        {
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>( poolSize );
+            for ( int i = 0; i < poolSize; i++ )
+            {
+                final int first = i;
+                final int step = poolSize;
+                tasks.add( new Callable<Void>()
+                {
+                    public Void call()
+                    {
+                        for ( int j = first; j < unknown.size(); j += step )
+                        {
+                            kind( unknown.get( j ) );
+                        }
+                        return null;
+                    }
+                } );
+            }
+            executor.invokeAll( tasks );
+        }
+        catch ( InterruptedException e )
+        {
+            // remaining files are probed when needed
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return number of queries made to the file system
+     */
+    public long getProbes()
+    {
+        return probes.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "File attributes: " + getProbes() + " probes for " + kinds.size() + " distinct paths";
+    }
+
+    private Kind kind( File file )
+    {
+        String path = file.getAbsolutePath();
+        Kind kind = kinds.get( path );
+        if ( kind == null )
+        {
+            kind = probe( file );
+            Kind previous = kinds.putIfAbsent( path, kind );
+            if ( previous != null )
+            {
+                kind = previous;
+            }
+        }
+        return kind;
+    }
+
+    private Kind probe( File file )
+    {
+        probes.incrementAndGet();
+        if ( file.isDirectory() )
+        {
+            return Kind.DIRECTORY;
+        }
+        if ( file.isFile() )
+        {
+            return Kind.FILE;
+        }
+        return file.exists() ? Kind.OTHER : Kind.MISSING;
+    }
+}
@@ -66,6 +66,7 @@ public class InternalMojoBootstraper
     public void start( MavenProject project, MavenSession session )
         throws IOException, MojoExecutionException
     {
+        server.verifyPinnedVersion();
         executeMojo( project, session );
     }
 
@@ -0,0 +1,113 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.codehaus.mojo.sonar.bootstrap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Distinct paths of libraries of a reactor. Modules share the same jars, so each module only keeps the ids of its
+ * libraries, see {@link Libraries}. Safe for concurrent use.
+ *
+ * @since 2.5
+ */
+class LibraryIndex
+{
+
+    private static final char SEPARATOR = ',';
+
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+
+    private final List<String> paths = new ArrayList<String>();
+
+    synchronized int id( String path )
+    {
+        Integer id = ids.get( path );
+        if ( id == null )
+        {
+            id = paths.size();
+            paths.add( path );
+            ids.put( path, id );
+        }
+        return id;
+    }
+
+    synchronized String path( int id )
+    {
+        return paths.get( id );
+    }
+
+    synchronized int size()
+    {
+        return paths.size();
+    }
+
+    Libraries librariesOf( String[] libraryPaths )
+    {
+        int[] libraryIds = new int[libraryPaths.length];
+        for ( int i = 0; i < libraryPaths.length; i++ )
+        {
+            libraryIds[i] = id( libraryPaths[i] );
+        }
+        return new Libraries( this, libraryIds );
+    }
+
+    /**
+     * @param value comma-separated paths, as produced by {@link Libraries#toString()}
+     */
+    Libraries parse( String value )
+    {
+        return librariesOf( value.split( String.valueOf( SEPARATOR ), -1 ) );
+    }
+
+    /**
+     * Libraries of a module. The comma-separated value of the property is only built by {@link #toString()}, when
+     * the property is given to the runner.
+     */
+    static class Libraries
+    {
+        private final LibraryIndex index;
+
+        private final int[] ids;
+
+        Libraries( LibraryIndex index, int[] ids )
+        {
+            this.index = index;
+            this.ids = ids;
+        }
+
+        @Override
+        public String toString()
+        {
+            StringBuilder value = new StringBuilder();
+            for ( int i = 0; i < ids.length; i++ )
+            {
+                if ( i > 0 )
+                {
+                    value.append( SEPARATOR );
+                }
+                value.append( index.path( ids[i] ) );
+            }
+            return value.toString();
+        }
+    }
+}
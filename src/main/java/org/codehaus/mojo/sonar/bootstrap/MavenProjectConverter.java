@@ -23,7 +23,10 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.lang.StringUtils;
 import org.apache.maven.artifact.DependencyResolutionRequiredException;
 import org.apache.maven.model.CiManagement;
@@ -39,15 +42,26 @@ import javax.annotation.Nullable;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class MavenProjectConverter
 {
@@ -89,39 +103,134 @@ public class MavenProjectConverter
 
     private static final String JAVA_PROJECT_LIBRARIES = "sonar.java.libraries";
 
+    private static final String SKIP_PROPERTY = "sonar.skip";
+
+    /**
+     * Number of modules converted concurrently, 1 by default
+     */
+    public static final String THREADS_PROPERTY = "sonar.maven.threads";
+
+    /**
+     * Reuse the properties of the modules that did not change since the previous build, false by default
+     */
+    public static final String INCREMENTAL_PROPERTY = "sonar.maven.incremental";
+
+    /**
+     * Number of modules whose dependencies are collected concurrently, 1 by default
+     */
+    public static final String DEPENDENCY_THREADS_PROPERTY = "sonar.maven.dependencyThreads";
+
+    private static final String PROJECT_DEPENDENCIES = "sonar.maven.projectDependencies";
+
     private final boolean includePomXml;
 
     private Properties userProperties;
 
     private DependencyCollector dependencyCollector;
 
+    private final PathResolver pathResolver;
+
+    private final FileAttributesCache fileAttributes;
+
+    private final LibraryIndex libraryIndex = new LibraryIndex();
+
+    /**
+     * Libraries of the converted modules, only rendered when the properties are given to the runner
+     */
+    private final ConcurrentMap<MavenProject, LibraryIndex.Libraries> librariesByModule =
+        new ConcurrentHashMap<MavenProject, LibraryIndex.Libraries>();
+
+    private ExecutorService dependencyExecutor;
+
+    /**
+     * Dependencies being collected by {@link #dependencyExecutor}, set once all the modules are converted
+     */
+    private final ConcurrentMap<MavenProject, Future<String>> pendingDependencies =
+        new ConcurrentHashMap<MavenProject, Future<String>>();
+
     public MavenProjectConverter( Log log, boolean includePomXml, DependencyCollector dependencyCollector )
+    {
+        this( log, includePomXml, dependencyCollector, new PathResolver() );
+    }
+
+    /**
+     * @param pathResolver resolver of paths, can be shared by all the conversions of a build
+     */
+    public MavenProjectConverter( Log log, boolean includePomXml, DependencyCollector dependencyCollector,
+                                  PathResolver pathResolver )
+    {
+        this( log, includePomXml, dependencyCollector, pathResolver, new FileAttributesCache() );
+    }
+
+    /**
+     * @param pathResolver resolver of paths, can be shared by all the conversions of a build
+     * @param fileAttributes attributes of the files, can be shared by all the conversions of a build
+     */
+    public MavenProjectConverter( Log log, boolean includePomXml, DependencyCollector dependencyCollector,
+                                  PathResolver pathResolver, FileAttributesCache fileAttributes )
     {
         this.log = log;
         this.includePomXml = includePomXml;
         this.dependencyCollector = dependencyCollector;
+        this.pathResolver = pathResolver;
+        this.fileAttributes = fileAttributes;
     }
 
     public Properties configure( List<MavenProject> mavenProjects, MavenProject root, Properties userProperties )
         throws MojoExecutionException
+    {
+        return configureHierarchy( mavenProjects, root, userProperties ).toProperties();
+    }
+
+    /**
+     * Same as {@link #configure(List, MavenProject, Properties)}, keeping the properties of each module apart until
+     * they are flattened.
+     */
+    public ModuleProperties configureHierarchy( List<MavenProject> mavenProjects, MavenProject root,
+                                                Properties userProperties )
+        throws MojoExecutionException
     {
         this.userProperties = userProperties;
-        // projects by canonical path to pom.xml
-        Map<String, MavenProject> paths = new HashMap<String, MavenProject>();
         Map<MavenProject, Properties> propsByModule = new HashMap<MavenProject, Properties>();
 
         try
         {
-            configureModules( mavenProjects, paths, propsByModule );
-            Properties props = new Properties();
-            props.setProperty( ScanProperties.PROJECT_KEY, getSonarKey( root ) );
-            rebuildModuleHierarchy( props, paths, propsByModule, root, "" );
-            if ( !propsByModule.isEmpty() )
+            ModulePropertiesCache cache = null;
+            if ( Boolean.parseBoolean( rootProperty( root, INCREMENTAL_PROPERTY ) ) )
             {
-                throw new IllegalStateException( UNABLE_TO_DETERMINE_PROJECT_STRUCTURE_EXCEPTION_MESSAGE + " \""
-                    + propsByModule.keySet().iterator().next().getName() + "\" is orphan" );
+                cache = new ModulePropertiesCache( log, userProperties, includePomXml,
+                                                   rootProperty( root, RunnerBootstraper.DEPENDENCY_COLLECTOR ) );
             }
-            return props;
+            int threads = threads( root, THREADS_PROPERTY );
+            if ( threads > 1 )
+            {
+                fileAttributes.prefetch( candidateFiles( mavenProjects ), threads );
+            }
+            int dependencyThreads = threads( root, DEPENDENCY_THREADS_PROPERTY );
+            if ( dependencyThreads > 1 )
+            {
+                log.debug( "Collecting dependencies with " + dependencyThreads + " threads" );
+                dependencyExecutor = newExecutor( dependencyThreads, "sonar-maven-dependencies-%d" );
+            }
+            try
+            {
+                ConcurrentMap<MavenProject, String> unwritten = new ConcurrentHashMap<MavenProject, String>();
+                configureModules( mavenProjects, propsByModule, threads, cache, unwritten );
+                completeModules( mavenProjects, propsByModule, cache, unwritten );
+            }
+            finally
+            {
+                if ( dependencyExecutor != null )
+                {
+                    dependencyExecutor.shutdownNow();
+                    dependencyExecutor = null;
+                }
+                pendingDependencies.clear();
+            }
+            ModuleProperties hierarchy = buildHierarchy( mavenProjects, root, propsByModule );
+            log.debug( pathResolver.toString() );
+            log.debug( fileAttributes.toString() );
+            return hierarchy;
         }
         catch ( IOException e )
         {
@@ -130,89 +239,396 @@ public class MavenProjectConverter
 
     }
 
-    private void rebuildModuleHierarchy( Properties properties, Map<String, MavenProject> paths,
-                                         Map<MavenProject, Properties> propsByModule, MavenProject current,
-                                         String prefix )
+    /**
+     * Files whose existence is checked when converting the given projects, so that they can be probed in batch.
+     */
+    private Set<File> candidateFiles( List<MavenProject> mavenProjects )
+    {
+        Set<File> files = new LinkedHashSet<File>();
+        for ( MavenProject pom : mavenProjects )
+        {
+            if ( isSkipped( pom ) )
+            {
+                continue;
+            }
+            File basedir = pom.getBasedir();
+            files.add( new File( basedir, "src/main/scala" ) );
+            files.add( new File( basedir, "src/test/scala" ) );
+            files.addAll( resolvePaths( pom.getCompileSourceRoots(), basedir ) );
+            files.addAll( resolvePaths( pom.getTestCompileSourceRoots(), basedir ) );
+            String outputDirectory = pom.getBuild().getOutputDirectory();
+            if ( outputDirectory != null )
+            {
+                files.add( resolvePath( outputDirectory, basedir ) );
+            }
+            try
+            {
+                List<String> classpath = (List<String>) pom.getCompileClasspathElements();
+                if ( classpath != null )
+                {
+                    files.addAll( resolvePaths( classpath, basedir ) );
+                }
+            }
+            catch ( DependencyResolutionRequiredException e )
+            {
+                // reported when converting the project
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Rebuilds the hierarchy of modules declared in the poms, starting from the root. Modules are visited depth first
+     * with an explicit stack, so that deeply nested reactors do not exhaust the call stack.
+     *
+     * @param propsByModule properties of each module, consumed by this method
+     */
+    @VisibleForTesting
+    ModuleProperties buildHierarchy( List<MavenProject> mavenProjects, MavenProject root,
+                                     Map<MavenProject, Properties> propsByModule )
         throws IOException
     {
-        Properties currentProps = propsByModule.get( current );
+        ModuleIndex modules = new ModuleIndex();
+        for ( MavenProject pom : mavenProjects )
+        {
+            modules.add( pom );
+        }
+        Interner<String> interner = Interners.newStrongInterner();
+        Map<Object, Object> rootProps = new HashMap<Object, Object>();
+        rootProps.put( ScanProperties.PROJECT_KEY, getSonarKey( root ) );
+
+        Deque<HierarchyFrame> stack = new ArrayDeque<HierarchyFrame>();
+        stack.push( enter( root, null, rootProps, propsByModule ) );
+        ModuleProperties hierarchy = null;
+        while ( hierarchy == null )
+        {
+            HierarchyFrame frame = stack.peek();
+            if ( frame.modulePaths.hasNext() )
+            {
+                File modulePath = new File( frame.project.getBasedir(), frame.modulePaths.next() );
+                MavenProject module = modules.find( modulePath );
+                if ( module != null )
+                {
+                    String moduleId = module.getGroupId() + ":" + module.getArtifactId();
+                    frame.moduleIds.add( moduleId );
+                    stack.push( enter( module, moduleId, new HashMap<Object, Object>(), propsByModule ) );
+                }
+                continue;
+            }
+            stack.pop();
+            if ( !frame.moduleIds.isEmpty() && !frame.skipped )
+            {
+                frame.properties.put( "sonar.modules", StringUtils.join( frame.moduleIds, SEPARATOR ) );
+            }
+            ModuleProperties node = new ModuleProperties( frame.id, frame.properties, frame.children, interner );
+            if ( stack.isEmpty() )
+            {
+                hierarchy = node;
+            }
+            else
+            {
+                stack.peek().children.add( node );
+            }
+        }
+
+        if ( !propsByModule.isEmpty() )
+        {
+            throw new IllegalStateException( UNABLE_TO_DETERMINE_PROJECT_STRUCTURE_EXCEPTION_MESSAGE + " \""
+                + propsByModule.keySet().iterator().next().getName() + "\" is orphan" );
+        }
+        return hierarchy;
+    }
+
+    private HierarchyFrame enter( MavenProject current, @Nullable String id, Map<Object, Object> properties,
+                                  Map<MavenProject, Properties> propsByModule )
+    {
+        Properties currentProps = propsByModule.remove( current );
+        LibraryIndex.Libraries libraries = librariesByModule.remove( current );
         if ( currentProps == null )
         {
             throw new IllegalStateException( UNABLE_TO_DETERMINE_PROJECT_STRUCTURE_EXCEPTION_MESSAGE );
         }
-        boolean skipped = "true".equals( currentProps.getProperty( "sonar.skip" ) );
+        boolean skipped = "true".equals( currentProps.getProperty( SKIP_PROPERTY ) );
         if ( !skipped )
         {
-            for ( Map.Entry<Object, Object> prop : currentProps.entrySet() )
+            properties.putAll( currentProps );
+            if ( libraries != null )
             {
-                properties.put( prefix + prop.getKey(), prop.getValue() );
+                putIfAbsent( properties, ScanProperties.PROJECT_LIBRARIES, libraries );
+                putIfAbsent( properties, JAVA_PROJECT_LIBRARIES, libraries );
             }
         }
         else
         {
             log.debug( "Module " + current + " skipped by property 'sonar.skip'" );
         }
-        propsByModule.remove( current );
-        List<String> moduleIds = new ArrayList<String>();
-        for ( String modulePathStr : current.getModules() )
+        return new HierarchyFrame( current, id, properties, skipped );
+    }
+
+    private static void putIfAbsent( Map<Object, Object> properties, String key, Object value )
+    {
+        if ( !properties.containsKey( key ) )
         {
-            File modulePath = new File( current.getBasedir(), modulePathStr );
-            MavenProject module = findMavenProject( modulePath, paths );
-            if ( module != null )
+            properties.put( key, value );
+        }
+    }
+
+    /**
+     * Module being visited by {@link MavenProjectConverter#buildHierarchy(List, MavenProject, Map)}
+     */
+    private static class HierarchyFrame
+    {
+        private final MavenProject project;
+
+        private final String id;
+
+        private final Map<Object, Object> properties;
+
+        private final boolean skipped;
+
+        private final Iterator<String> modulePaths;
+
+        private final List<String> moduleIds = new ArrayList<String>();
+
+        private final List<ModuleProperties> children = new ArrayList<ModuleProperties>();
+
+        HierarchyFrame( MavenProject project, @Nullable String id, Map<Object, Object> properties, boolean skipped )
+        {
+            this.project = project;
+            this.id = id;
+            this.properties = properties;
+            this.skipped = skipped;
+            this.modulePaths = ( (List<String>) project.getModules() ).iterator();
+        }
+    }
+
+    private String rootProperty( MavenProject root, String key )
+    {
+        return StringUtils.defaultIfEmpty( userProperties.getProperty( key ),
+                                           root.getModel().getProperties().getProperty( key ) );
+    }
+
+    private int threads( MavenProject root, String property )
+        throws MojoExecutionException
+    {
+        String value = rootProperty( root, property );
+        if ( StringUtils.isBlank( value ) )
+        {
+            return 1;
+        }
+        try
+        {
+            int threads = Integer.parseInt( value.trim() );
+            if ( threads > 0 )
             {
-                String moduleId = module.getGroupId() + ":" + module.getArtifactId();
-                rebuildModuleHierarchy( properties, paths, propsByModule, module, prefix + moduleId + "." );
-                moduleIds.add( moduleId );
+                return threads;
             }
         }
-        if ( !moduleIds.isEmpty() && !skipped )
+        catch ( NumberFormatException e )
         {
-            properties.put( prefix + "sonar.modules", StringUtils.join( moduleIds, SEPARATOR ) );
+            // reported below
         }
+        throw new MojoExecutionException( "The property " + property + " must be a positive number of threads: "
+            + value );
+    }
+
+    private static ExecutorService newExecutor( int threads, String nameFormat )
+    {
+        return Executors.newFixedThreadPool( threads, new ThreadFactoryBuilder().setNameFormat( nameFormat )
+                                                                                .setDaemon( true ).build() );
     }
 
-    private void configureModules( List<MavenProject> mavenProjects, Map<String, MavenProject> paths,
-                                   Map<MavenProject, Properties> propsByModule )
+    /**
+     * @param unwritten fingerprints of the modules to cache once their dependencies are collected
+     */
+    private void configureModules( List<MavenProject> mavenProjects, Map<MavenProject, Properties> propsByModule,
+                                   int threads, @Nullable final ModulePropertiesCache cache,
+                                   final ConcurrentMap<MavenProject, String> unwritten )
         throws IOException, MojoExecutionException
     {
-        for ( MavenProject pom : mavenProjects )
+        if ( threads <= 1 || mavenProjects.size() <= 1 )
         {
-            paths.put( pom.getFile().getCanonicalPath(), pom );
-            Properties props = new Properties();
-            merge( pom, props );
-            propsByModule.put( pom, props );
+            for ( MavenProject pom : mavenProjects )
+            {
+                propsByModule.put( pom, convert( pom, cache, unwritten ) );
+            }
+            return;
         }
-    }
 
-    private static MavenProject findMavenProject( final File modulePath, Map<String, MavenProject> paths )
-        throws IOException
-    {
-        String canonicalModulePath = modulePath.getCanonicalPath();
-        if ( modulePath.exists() )
+        log.debug( "Converting " + mavenProjects.size() + " modules with " + threads + " threads" );
+        ExecutorService executor = newExecutor( Math.min( threads, mavenProjects.size() ), "sonar-maven-converter-%d" );
+        try
         {
-            if ( modulePath.isDirectory() )
+            List<Future<Properties>> results = new ArrayList<Future<Properties>>( mavenProjects.size() );
+            for ( final MavenProject pom : mavenProjects )
             {
-                String pomFile = new File( canonicalModulePath, MAVEN_POM_XML ).getCanonicalPath();
-                MavenProject project = paths.get(pomFile);
-                if ( project != null )
+                results.add( executor.submit( new Callable<Properties>()
                 {
-                    return project;
-                }
-                else
-                {
-                    for ( Map.Entry<String, MavenProject> entry : paths.entrySet() )
+                    public Properties call()
+                        throws MojoExecutionException
                     {
-                        String pomFileParentDir = new File( entry.getKey() ).getParent();
-                        if ( pomFileParentDir.equals( canonicalModulePath ) )
-                        {
-                            return entry.getValue();
-                        }
+                        return convert( pom, cache, unwritten );
                     }
-                    return null;
+                } ) );
+            }
+            // results are read in reactor order, so that the first failure reported is always the same
+            for ( int i = 0; i < mavenProjects.size(); i++ )
+            {
+                propsByModule.put( mavenProjects.get( i ), await( results.get( i ) ) );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for the dependencies collected in background, in reactor order so that the first failure reported is
+     * always the same.
+     */
+    private void completeModules( List<MavenProject> mavenProjects, Map<MavenProject, Properties> propsByModule,
+                                  @Nullable ModulePropertiesCache cache, Map<MavenProject, String> unwritten )
+        throws MojoExecutionException
+    {
+        for ( MavenProject pom : mavenProjects )
+        {
+            Future<String> dependencies = pendingDependencies.get( pom );
+            if ( dependencies != null )
+            {
+                Properties props = propsByModule.get( pom );
+                props.setProperty( PROJECT_DEPENDENCIES, await( dependencies ) );
+                String fingerprint = unwritten.get( pom );
+                if ( cache != null && fingerprint != null )
+                {
+                    cache.write( pom, fingerprint, withLibraries( pom, props ) );
                 }
             }
         }
-        return paths.get( canonicalModulePath );
+    }
+
+    private Properties convert( MavenProject pom, @Nullable ModulePropertiesCache cache,
+                                ConcurrentMap<MavenProject, String> unwritten )
+        throws MojoExecutionException
+    {
+        if ( isSkipped( pom ) )
+        {
+            // the properties of a skipped module are dropped when rebuilding the hierarchy
+            Properties props = new Properties();
+            props.setProperty( SKIP_PROPERTY, "true" );
+            return props;
+        }
+        String fingerprint = null;
+        if ( cache != null )
+        {
+            fingerprint = cache.fingerprint( pom );
+            Properties cached = cache.read( pom, fingerprint );
+            if ( cached != null )
+            {
+                log.debug( "Module " + pom + " is unchanged, reusing its properties" );
+                shareLibraries( pom, cached );
+                return cached;
+            }
+        }
+        Properties props = new Properties();
+        merge( pom, props );
+        if ( cache != null )
+        {
+            if ( pendingDependencies.containsKey( pom ) )
+            {
+                unwritten.put( pom, fingerprint );
+            }
+            else
+            {
+                cache.write( pom, fingerprint, withLibraries( pom, props ) );
+            }
+        }
+        return props;
+    }
+
+    /**
+     * Same value as the one given to the module by {@link #merge(MavenProject, Properties)}, user properties
+     * overriding the properties of the pom.
+     */
+    private boolean isSkipped( MavenProject pom )
+    {
+        String skip = userProperties.getProperty( SKIP_PROPERTY );
+        if ( skip == null )
+        {
+            skip = pom.getModel().getProperties().getProperty( SKIP_PROPERTY );
+        }
+        return "true".equals( skip );
+    }
+
+    /**
+     * Moves the libraries read from the cache to {@link #librariesByModule}, unless they were overridden
+     */
+    private void shareLibraries( MavenProject pom, Properties props )
+    {
+        String value = props.getProperty( ScanProperties.PROJECT_LIBRARIES );
+        if ( value != null && value.equals( props.getProperty( JAVA_PROJECT_LIBRARIES ) ) )
+        {
+            librariesByModule.put( pom, libraryIndex.parse( value ) );
+            props.remove( ScanProperties.PROJECT_LIBRARIES );
+            props.remove( JAVA_PROJECT_LIBRARIES );
+        }
+    }
+
+    /**
+     * @return the properties of the module with its libraries rendered, as written to the cache
+     */
+    private Properties withLibraries( MavenProject pom, Properties props )
+    {
+        LibraryIndex.Libraries libraries = librariesByModule.get( pom );
+        if ( libraries == null )
+        {
+            return props;
+        }
+        Properties result = new Properties();
+        result.putAll( props );
+        String value = libraries.toString();
+        setPropertyIfAbsent( result, ScanProperties.PROJECT_LIBRARIES, value );
+        setPropertyIfAbsent( result, JAVA_PROJECT_LIBRARIES, value );
+        return result;
+    }
+
+    private static void setPropertyIfAbsent( Properties props, String key, String value )
+    {
+        if ( !props.containsKey( key ) )
+        {
+            props.setProperty( key, value );
+        }
+    }
+
+    private static <T> T await( Future<T> result )
+        throws MojoExecutionException
+    {
+        try
+        {
+            return result.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException( "Interrupted while converting Maven modules", e );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+            if ( cause instanceof MojoExecutionException )
+            {
+                throw (MojoExecutionException) cause;
+            }
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException( cause );
+        }
     }
 
     @VisibleForTesting
@@ -231,10 +647,27 @@ public class MavenProjectConverter
         guessJavaVersion( pom, props );
         guessEncoding( pom, props );
         convertMavenLinksToProperties( props, pom );
-        props.setProperty( "sonar.maven.projectDependencies", dependencyCollector.toJson( pom ) );
+        collectDependencies( pom, props );
         synchronizeFileSystemAndOtherProps( pom, props );
     }
 
+    private void collectDependencies( final MavenProject pom, Properties props )
+    {
+        if ( dependencyExecutor == null )
+        {
+            props.setProperty( PROJECT_DEPENDENCIES, dependencyCollector.toJson( pom ) );
+            return;
+        }
+        // set by completeModules once all the modules are converted
+        pendingDependencies.put( pom, dependencyExecutor.submit( new Callable<String>()
+        {
+            public String call()
+            {
+                return dependencyCollector.toJson( pom );
+            }
+        } ) );
+    }
+
     private void defineProjectKey( MavenProject pom, Properties props )
     {
         String key;
@@ -322,16 +755,16 @@ public class MavenProjectConverter
     private void synchronizeFileSystemAndOtherProps( MavenProject pom, Properties props )
         throws MojoExecutionException
     {
-        props.setProperty( ScanProperties.PROJECT_BASEDIR, pom.getBasedir().getAbsolutePath() );
+        props.setProperty( ScanProperties.PROJECT_BASEDIR, pathResolver.absolutePath( pom.getBasedir() ) );
         File buildDir = getBuildDir( pom );
         if ( buildDir != null )
         {
-            props.setProperty( PROPERTY_PROJECT_BUILDDIR, buildDir.getAbsolutePath() );
-            props.setProperty( RunnerProperties.WORK_DIR, getSonarWorkDir( pom ).getAbsolutePath() );
+            props.setProperty( PROPERTY_PROJECT_BUILDDIR, pathResolver.absolutePath( buildDir ) );
+            props.setProperty( RunnerProperties.WORK_DIR, pathResolver.absolutePath( getSonarWorkDir( pom ) ) );
         }
         populateBinaries( pom, props );
 
-        populateLibraries( pom, props );
+        populateLibraries( pom );
 
         // IMPORTANT NOTE : reference on properties from POM model must not be saved,
         // instead they should be copied explicitly - see SONAR-2896
@@ -356,7 +789,7 @@ public class MavenProjectConverter
         }
     }
 
-    private void populateLibraries( MavenProject pom, Properties props )
+    private void populateLibraries( MavenProject pom )
         throws MojoExecutionException
     {
         List<File> libraries = Lists.newArrayList();
@@ -369,7 +802,7 @@ public class MavenProjectConverter
                     if ( !classPathString.equals( pom.getBuild().getOutputDirectory() ) )
                     {
                         File libPath = resolvePath( classPathString, pom.getBasedir() );
-                        if ( libPath != null && libPath.exists() )
+                        if ( libPath != null && fileAttributes.exists( libPath ) )
                         {
                             libraries.add( libPath );
                         }
@@ -383,19 +816,18 @@ public class MavenProjectConverter
         }
         if ( !libraries.isEmpty() )
         {
-            String librariesValue = StringUtils.join( toPaths( libraries ), SEPARATOR );
-            // Populate both deprecated and new property for backward compatibility
-            props.setProperty( ScanProperties.PROJECT_LIBRARIES, librariesValue );
-            props.setProperty( JAVA_PROJECT_LIBRARIES, librariesValue );
+            // the value is only built when given to the runner, paths are shared by all the modules. Both deprecated
+            // and new properties are added to the hierarchy, unless overridden by the pom or the user
+            librariesByModule.put( pom, libraryIndex.librariesOf( toPaths( libraries ) ) );
         }
     }
 
     private void populateBinaries( MavenProject pom, Properties props )
     {
         File binaryDir = resolvePath( pom.getBuild().getOutputDirectory(), pom.getBasedir() );
-        if ( binaryDir != null && binaryDir.exists() )
+        if ( binaryDir != null && fileAttributes.exists( binaryDir ) )
         {
-            String binPath = binaryDir.getAbsolutePath();
+            String binPath = pathResolver.absolutePath( binaryDir );
             // Populate both deprecated and new property for backward compatibility
             props.setProperty( ScanProperties.PROJECT_BINARY_DIRS, binPath );
             props.setProperty( JAVA_PROJECT_BINARY_DIRS, binPath );
@@ -470,9 +902,9 @@ public class MavenProjectConverter
     private void addCustomSources( MavenProject pom, Set<String> sources, String relativePath )
     {
         File customSourcesPath = new File(pom.getBasedir(), relativePath);
-        if ( customSourcesPath.isDirectory() )
+        if ( fileAttributes.isDirectory( customSourcesPath ) )
         {
-            String customSourcesPathStr = customSourcesPath.getAbsolutePath();
+            String customSourcesPathStr = pathResolver.absolutePath( customSourcesPath );
             if ( ! sources.contains(customSourcesPathStr) )
             {
                 sources.add(customSourcesPathStr);
@@ -518,7 +950,7 @@ public class MavenProjectConverter
     {
         for ( File dir : dirs )
         {
-            if ( !dir.exists() )
+            if ( !fileAttributes.exists( dir ) )
             {
                 throw new MojoExecutionException(
                                                   String.format(
@@ -529,7 +961,7 @@ public class MavenProjectConverter
         return dirs;
     }
 
-    private static List<File> keepExistingPaths( List<File> files )
+    private List<File> keepExistingPaths( List<File> files )
     {
         return Lists.newArrayList( Collections2.filter( files,
                                                         new Predicate<File>()
@@ -538,39 +970,68 @@ public class MavenProjectConverter
                                                             public boolean apply( File fileOrDir )
                                                             {
                                                                 return fileOrDir != null
-                                                                    && fileOrDir.exists();
+                                                                    && fileAttributes.exists( fileOrDir );
                                                             }
                                                         } ) );
     }
 
-    private List<File> removeNested( List<File> originalPaths )
+    /**
+     * Removes the paths located inside another path of the list, keeping the order of the remaining ones. Paths are
+     * sorted once, so that the possible parents of a path are the paths kept just before it. They are compared with a
+     * trailing separator, otherwise "/a/src-gen" would sort between "/a/src" and "/a/src/x".
+     */
+    @VisibleForTesting
+    static List<File> removeNested( List<File> originalPaths )
     {
-        List<File> result = new ArrayList<File>();
-        for ( File maybeChild : originalPaths )
+        int size = originalPaths.size();
+        final String[] absolutePaths = new String[size];
+        Integer[] sorted = new Integer[size];
+        for ( int i = 0; i < size; i++ )
+        {
+            String path = originalPaths.get( i ).getAbsolutePath();
+            absolutePaths[i] = path.endsWith( File.separator ) ? path : path + File.separator;
+            sorted[i] = i;
+        }
+        Arrays.sort( sorted, new Comparator<Integer>()
         {
-            boolean hasParent = false;
-            for ( File possibleParent : originalPaths )
+            public int compare( Integer left, Integer right )
             {
-                if ( isStrictChild( maybeChild, possibleParent ) )
-                {
-                    hasParent = true;
-                }
+                return absolutePaths[left].compareTo( absolutePaths[right] );
             }
-            if ( !hasParent )
+        } );
+
+        // all the paths inside a given directory are contiguous once sorted
+        boolean[] nested = new boolean[size];
+        Deque<String> parents = new ArrayDeque<String>();
+        for ( Integer index : sorted )
+        {
+            String path = absolutePaths[index];
+            while ( !parents.isEmpty() && !path.startsWith( parents.peek() ) )
+            {
+                parents.pop();
+            }
+            if ( parents.isEmpty() )
+            {
+                parents.push( path );
+            }
+            else
             {
-                result.add( maybeChild );
+                nested[index] = !path.equals( parents.peek() );
             }
         }
-        return result;
-    }
 
-    boolean isStrictChild( File maybeChild, File possibleParent )
-    {
-        return maybeChild.getAbsolutePath().startsWith( possibleParent.getAbsolutePath() )
-            && !maybeChild.getAbsolutePath().equals( possibleParent.getAbsolutePath() );
+        List<File> result = new ArrayList<File>( size );
+        for ( int i = 0; i < size; i++ )
+        {
+            if ( !nested[i] )
+            {
+                result.add( originalPaths.get( i ) );
+            }
+        }
+        return result;
     }
 
-    private static String[] toPaths( Collection<File> dirs )
+    private String[] toPaths( Collection<File> dirs )
     {
         Collection<String> paths =
             Collections2.transform( dirs, new Function<File, String>()
@@ -578,9 +1039,50 @@ public class MavenProjectConverter
                 @Override
                 public String apply( File dir )
                 {
-                    return dir.getAbsolutePath();
+                    return pathResolver.absolutePath( dir );
                 }
             } );
         return paths.toArray( new String[paths.size()] );
     }
+
+    /**
+     * Projects of the reactor, indexed by canonical path of their pom file and by canonical path of their base
+     * directory, so that a module declared in a pom is found without scanning the whole reactor.
+     */
+    private class ModuleIndex
+    {
+        private final Map<String, MavenProject> byPom = new HashMap<String, MavenProject>();
+
+        private final Map<String, MavenProject> byDir = new HashMap<String, MavenProject>();
+
+        void add( MavenProject project )
+            throws IOException
+        {
+            File pom = pathResolver.canonicalFile( project.getFile() );
+            byPom.put( pom.getPath(), project );
+            String dir = pom.getParent();
+            if ( dir != null && !byDir.containsKey( dir ) )
+            {
+                // first project of the reactor wins, when several pom files share a directory
+                byDir.put( dir, project );
+            }
+        }
+
+        MavenProject find( File modulePath )
+            throws IOException
+        {
+            String canonicalModulePath = pathResolver.canonicalPath( modulePath );
+            if ( fileAttributes.isDirectory( modulePath ) )
+            {
+                MavenProject project = byPom.get( pathResolver.canonicalPath( new File( canonicalModulePath,
+                                                                                        MAVEN_POM_XML ) ) );
+                if ( project != null )
+                {
+                    return project;
+                }
+                return byDir.get( canonicalModulePath );
+            }
+            return byPom.get( canonicalModulePath );
+        }
+    }
 }
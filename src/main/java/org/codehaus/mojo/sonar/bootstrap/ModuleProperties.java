@@ -0,0 +1,185 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.codehaus.mojo.sonar.bootstrap;
+
+import com.google.common.collect.Interner;
+
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Properties of a module and of its sub-modules. Keys are stored once per module, without the prefix made of the ids
+ * of the parent modules: the prefixed keys expected by the SonarQube runner are only built by {@link #flatten(Map)}.
+ * Values are strings, or objects whose string form is built on demand, like the libraries of a module.
+ *
+ * @since 2.5
+ */
+public class ModuleProperties
+{
+
+    private final String id;
+
+    private final String[] keys;
+
+    private final Object[] values;
+
+    private final List<ModuleProperties> children;
+
+    ModuleProperties( @Nullable String id, Map<Object, Object> properties, List<ModuleProperties> children,
+                      Interner<String> interner )
+    {
+        this.id = id == null ? null : interner.intern( id );
+        this.keys = new String[properties.size()];
+        this.values = new Object[properties.size()];
+        int i = 0;
+        for ( Map.Entry<Object, Object> entry : properties.entrySet() )
+        {
+            keys[i] = interner.intern( (String) entry.getKey() );
+            values[i] = entry.getValue();
+            i++;
+        }
+        this.children = children.isEmpty() ? Collections.<ModuleProperties>emptyList()
+                        : Collections.unmodifiableList( new ArrayList<ModuleProperties>( children ) );
+    }
+
+    /**
+     * @return id of the module in its parent, null for the root module
+     */
+    public String getId()
+    {
+        return id;
+    }
+
+    /**
+     * @return value of the property of this module, not looking at sub-modules
+     */
+    public String getProperty( String key )
+    {
+        for ( int i = 0; i < keys.length; i++ )
+        {
+            if ( keys[i].equals( key ) )
+            {
+                return values[i].toString();
+            }
+        }
+        return null;
+    }
+
+    public List<ModuleProperties> getChildren()
+    {
+        return children;
+    }
+
+    /**
+     * Puts the properties of this module and of its sub-modules into the target, prefixing the keys of the
+     * sub-modules with their ids.
+     */
+    public void flatten( final Map<Object, Object> target )
+    {
+        try
+        {
+            writeTo( new Sink()
+            {
+                public void put( String prefix, String key, String value )
+                {
+                    target.put( prefix + key, value );
+                }
+            } );
+        }
+        catch ( IOException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    /**
+     * Gives the properties of this module and of its sub-modules to the sink, with the prefix of their keys used by
+     * {@link #flatten(Map)}. The prefix is shared by all the modules of a branch, and modules are visited with an
+     * explicit stack.
+     */
+    public void writeTo( Sink sink )
+        throws IOException
+    {
+        StringBuilder prefix = new StringBuilder();
+        Deque<Iterator<ModuleProperties>> stack = new ArrayDeque<Iterator<ModuleProperties>>();
+        Deque<Integer> prefixLengths = new ArrayDeque<Integer>();
+        putAll( sink, prefix );
+        stack.push( children.iterator() );
+        prefixLengths.push( 0 );
+        while ( !stack.isEmpty() )
+        {
+            prefix.setLength( prefixLengths.peek() );
+            Iterator<ModuleProperties> siblings = stack.peek();
+            if ( !siblings.hasNext() )
+            {
+                stack.pop();
+                prefixLengths.pop();
+                continue;
+            }
+            ModuleProperties module = siblings.next();
+            prefix.append( module.id ).append( '.' );
+            module.putAll( sink, prefix );
+            if ( !module.children.isEmpty() )
+            {
+                stack.push( module.children.iterator() );
+                prefixLengths.push( prefix.length() );
+            }
+        }
+    }
+
+    private void putAll( Sink sink, StringBuilder prefix )
+        throws IOException
+    {
+        String modulePrefix = prefix.toString();
+        for ( int i = 0; i < keys.length; i++ )
+        {
+            sink.put( modulePrefix, keys[i], values[i].toString() );
+        }
+    }
+
+    public Properties toProperties()
+    {
+        Properties properties = new Properties();
+        flatten( properties );
+        return properties;
+    }
+
+    /**
+     * Receives the properties of the modules, see {@link ModuleProperties#writeTo(Sink)}
+     */
+    public interface Sink
+    {
+        /**
+         * @param prefix ids of the module and of its parents, each followed by a dot, empty for the root module
+         * @param key key of the property in the module, the flattened key being the prefix followed by the key
+         */
+        void put( String prefix, String key, String value )
+            throws IOException;
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.codehaus.mojo.sonar.bootstrap;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.model.io.xpp3.MavenXpp3Writer;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.IOUtil;
+import org.sonar.runner.api.ScanProperties;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Properties of modules computed by a previous build, stored in the Sonar work directory of each module. An entry is
+ * only reused if the fingerprint of the module is unchanged: effective model, test classpath with timestamps and
+ * sizes, source roots, user properties.
+ *
+ * @since 2.5
+ */
+class ModulePropertiesCache
+{
+
+    static final String FILE_NAME = "module.properties";
+
+    private static final String FINGERPRINT = "sonar.maven.fingerprint";
+
+    /**
+     * To be incremented when the conversion changes, so that entries of older versions of the plugin are discarded
+     */
+    private static final String FORMAT = "3";
+
+    private final Log log;
+
+    private final Properties userProperties;
+
+    private final boolean includePomXml;
+
+    private final String dependencyCollector;
+
+    /**
+     * @param dependencyCollector value of {@link RunnerBootstraper#DEPENDENCY_COLLECTOR} for the whole build, which
+     *            may only be set in the top level pom
+     */
+    ModulePropertiesCache( Log log, Properties userProperties, boolean includePomXml, String dependencyCollector )
+    {
+        this.log = log;
+        this.userProperties = userProperties;
+        this.includePomXml = includePomXml;
+        this.dependencyCollector = dependencyCollector;
+    }
+
+    /**
+     * @return the cached properties of the module, or null if they are unknown or out-of-date
+     */
+    Properties read( MavenProject pom, String fingerprint )
+    {
+        File file = fileFor( pom );
+        if ( file == null || !file.isFile() )
+        {
+            return null;
+        }
+        Properties props = new Properties();
+        InputStream input = null;
+        try
+        {
+            input = new FileInputStream( file );
+            props.load( input );
+        }
+        catch ( IOException e )
+        {
+            log.debug( "Unable to read " + file, e );
+            return null;
+        }
+        finally
+        {
+            IOUtil.close( input );
+        }
+        if ( !fingerprint.equals( props.remove( FINGERPRINT ) ) )
+        {
+            return null;
+        }
+        for ( String key : userProperties.stringPropertyNames() )
+        {
+            if ( !props.containsKey( key ) )
+            {
+                props.setProperty( key, userProperties.getProperty( key ) );
+            }
+        }
+        // credentials not given on the command line come from the pom or from the profiles of settings.xml
+        for ( Map.Entry<Object, Object> property : pom.getModel().getProperties().entrySet() )
+        {
+            String key = (String) property.getKey();
+            if ( RunnerBootstraper.isCredential( key ) && !props.containsKey( key ) )
+            {
+                props.setProperty( key, property.getValue().toString() );
+            }
+        }
+        return props;
+    }
+
+    void write( MavenProject pom, String fingerprint, Properties props )
+    {
+        File file = fileFor( pom );
+        if ( file == null )
+        {
+            return;
+        }
+        Properties entry = new Properties();
+        for ( Map.Entry<Object, Object> property : props.entrySet() )
+        {
+            String key = (String) property.getKey();
+            String value = property.getValue().toString();
+            // user properties are part of the fingerprint and are restored when reading, like credentials which are
+            // never written to disk
+            if ( !RunnerBootstraper.isCredential( key ) && !value.equals( userProperties.getProperty( key ) ) )
+            {
+                entry.setProperty( key, value );
+            }
+        }
+        entry.setProperty( FINGERPRINT, fingerprint );
+        File dir = file.getParentFile();
+        OutputStream output = null;
+        File tmp = null;
+        try
+        {
+            if ( !dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory() )
+            {
+                throw new IOException( "Unable to create directory " + dir );
+            }
+            tmp = File.createTempFile( "module", ".tmp", dir );
+            output = new FileOutputStream( tmp );
+            entry.store( output, null );
+            output.close();
+            output = null;
+            // renaming over an existing file fails on Windows
+            if ( !tmp.renameTo( file ) && ( !file.delete() || !tmp.renameTo( file ) ) )
+            {
+                throw new IOException( "Unable to move " + tmp + " to " + file );
+            }
+        }
+        catch ( IOException e )
+        {
+            // the cache is only an optimization, the module is converted again by the next build
+            log.debug( "Unable to write " + file, e );
+        }
+        finally
+        {
+            IOUtil.close( output );
+            if ( tmp != null )
+            {
+                tmp.delete();
+            }
+        }
+    }
+
+    String fingerprint( MavenProject pom )
+        throws MojoExecutionException
+    {
+        MessageDigest digest = newDigest();
+        update( digest, FORMAT );
+        update( digest, String.valueOf( includePomXml ) );
+        update( digest, String.valueOf( dependencyCollector ) );
+        update( digest, pom.getFile().getAbsolutePath() );
+
+        StringWriter model = new StringWriter();
+        try
+        {
+            new MavenXpp3Writer().write( model, pom.getModel() );
+        }
+        catch ( IOException e )
+        {
+            throw new IllegalStateException( "Unable to write the model of " + pom, e );
+        }
+        update( digest, model.toString() );
+
+        List<String> keys = new ArrayList<String>( userProperties.stringPropertyNames() );
+        Collections.sort( keys );
+        for ( String key : keys )
+        {
+            update( digest, key + "=" + userProperties.getProperty( key ) );
+        }
+
+        try
+        {
+            // the test classpath includes the compile one, and the dependencies JSON has test dependencies too
+            if ( pom.getTestClasspathElements() != null )
+            {
+                for ( String element : (List<String>) pom.getTestClasspathElements() )
+                {
+                    updateFile( digest, MavenProjectConverter.resolvePath( element, pom.getBasedir() ) );
+                }
+            }
+        }
+        catch ( DependencyResolutionRequiredException e )
+        {
+            throw new MojoExecutionException( "Unable to compute the fingerprint of " + pom, e );
+        }
+
+        File basedir = pom.getBasedir();
+        updatePath( digest, MavenProjectConverter.resolvePath( pom.getBuild().getOutputDirectory(), basedir ) );
+        updatePath( digest, new File( basedir, "src/main/scala" ) );
+        updatePath( digest, new File( basedir, "src/test/scala" ) );
+        if ( "war".equals( pom.getModel().getPackaging() ) )
+        {
+            String warSourceDirectory =
+                MavenUtils.getPluginSetting( pom, MavenProjectConverter.ARTIFACT_MAVEN_WAR_PLUGIN,
+                                             "warSourceDirectory", "src/main/webapp" );
+            updatePath( digest, MavenProjectConverter.resolvePath( warSourceDirectory, basedir ) );
+        }
+        for ( File root : MavenProjectConverter.resolvePaths( (List<String>) pom.getCompileSourceRoots(), basedir ) )
+        {
+            updatePath( digest, root );
+        }
+        for ( File root : MavenProjectConverter.resolvePaths( (List<String>) pom.getTestCompileSourceRoots(),
+                                                              basedir ) )
+        {
+            updatePath( digest, root );
+        }
+        for ( String key : new String[] { ScanProperties.PROJECT_SOURCE_DIRS, ScanProperties.PROJECT_TEST_DIRS } )
+        {
+            String prop =
+                StringUtils.defaultIfEmpty( userProperties.getProperty( key ), pom.getProperties().getProperty( key ) );
+            if ( prop != null )
+            {
+                for ( String path : StringUtils.split( prop, "," ) )
+                {
+                    updatePath( digest, MavenProjectConverter.resolvePath( path, basedir ) );
+                }
+            }
+        }
+        return toHex( digest.digest() );
+    }
+
+    private File fileFor( MavenProject pom )
+    {
+        if ( pom.getBuild().getDirectory() == null )
+        {
+            return null;
+        }
+        return new File( MavenProjectConverter.getSonarWorkDir( pom ), FILE_NAME );
+    }
+
+    private static void updatePath( MessageDigest digest, File file )
+    {
+        if ( file != null )
+        {
+            update( digest, file.getAbsolutePath() + ( file.isDirectory() ? ":d" : file.exists() ? ":f" : ":-" ) );
+        }
+    }
+
+    private static void updateFile( MessageDigest digest, File file )
+    {
+        if ( file != null )
+        {
+            update( digest, file.getAbsolutePath() + ":" + file.lastModified() + ":" + file.length() );
+        }
+    }
+
+    static void update( MessageDigest digest, String value )
+    {
+        try
+        {
+            digest.update( value.getBytes( "UTF-8" ) );
+            digest.update( (byte) '\n' );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( "UTF-8 is not available", e );
+        }
+    }
+
+    static MessageDigest newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance( "SHA-1" );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( "SHA-1 is not available", e );
+        }
+    }
+
+    static String toHex( byte[] bytes )
+    {
+        StringBuilder hex = new StringBuilder( bytes.length * 2 );
+        for ( byte b : bytes )
+        {
+            hex.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) ).append( Character.forDigit( b & 0xF, 16 ) );
+        }
+        return hex.toString();
+    }
+}
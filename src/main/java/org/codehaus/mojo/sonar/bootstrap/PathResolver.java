@@ -0,0 +1,95 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.codehaus.mojo.sonar.bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memoizes canonical and absolute forms of paths for the duration of a build, as canonicalization queries the file
+ * system for every component of a path. Safe for concurrent use.
+ */
+public class PathResolver
+{
+
+    private final ConcurrentMap<String, String> canonicalPaths = new ConcurrentHashMap<String, String>();
+
+    private final ConcurrentMap<String, String> absolutePaths = new ConcurrentHashMap<String, String>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    public String canonicalPath( File file )
+        throws IOException
+    {
+        String path = file.getPath();
+        String canonicalPath = canonicalPaths.get( path );
+        if ( canonicalPath != null )
+        {
+            hits.incrementAndGet();
+            return canonicalPath;
+        }
+        misses.incrementAndGet();
+        canonicalPath = file.getCanonicalPath();
+        canonicalPaths.putIfAbsent( path, canonicalPath );
+        return canonicalPath;
+    }
+
+    public File canonicalFile( File file )
+        throws IOException
+    {
+        return new File( canonicalPath( file ) );
+    }
+
+    public String absolutePath( File file )
+    {
+        String path = file.getPath();
+        String absolutePath = absolutePaths.get( path );
+        if ( absolutePath != null )
+        {
+            hits.incrementAndGet();
+            return absolutePath;
+        }
+        misses.incrementAndGet();
+        absolutePath = file.getAbsolutePath();
+        absolutePaths.putIfAbsent( path, absolutePath );
+        return absolutePath;
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Path resolution: " + getHits() + " hits, " + getMisses() + " misses";
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.codehaus.mojo.sonar.bootstrap;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes properties one by one, in the format read by {@link java.util.Properties#load(java.io.InputStream)}: the
+ * writer is expected to encode characters in ISO-8859-1, other characters are escaped.
+ */
+class PropertiesFileWriter
+{
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final Writer writer;
+
+    PropertiesFileWriter( Writer writer )
+    {
+        this.writer = writer;
+    }
+
+    public void put( String key, String value )
+        throws IOException
+    {
+        escape( key, true );
+        writer.write( '=' );
+        escape( value, false );
+        writer.write( '\n' );
+    }
+
+    private void escape( String value, boolean isKey )
+        throws IOException
+    {
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            char c = value.charAt( i );
+            switch ( c )
+            {
+                case '\\':
+                    writer.write( "\\\\" );
+                    break;
+                case '\t':
+                    writer.write( "\\t" );
+                    break;
+                case '\n':
+                    writer.write( "\\n" );
+                    break;
+                case '\r':
+                    writer.write( "\\r" );
+                    break;
+                case '\f':
+                    writer.write( "\\f" );
+                    break;
+                case '=':
+                case ':':
+                case '#':
+                case '!':
+                    writer.write( '\\' );
+                    writer.write( c );
+                    break;
+                case ' ':
+                    // leading spaces of values and all spaces of keys would be lost
+                    if ( isKey || i == 0 )
+                    {
+                        writer.write( '\\' );
+                    }
+                    writer.write( c );
+                    break;
+                default:
+                    if ( c < 0x20 || c > 0x7e )
+                    {
+                        writer.write( "\\u" );
+                        writer.write( HEX[( c >> 12 ) & 0xF] );
+                        writer.write( HEX[( c >> 8 ) & 0xF] );
+                        writer.write( HEX[( c >> 4 ) & 0xF] );
+                        writer.write( HEX[c & 0xF] );
+                    }
+                    else
+                    {
+                        writer.write( c );
+                    }
+            }
+        }
+    }
+}
@@ -24,6 +24,8 @@ package org.codehaus.mojo.sonar.bootstrap;
  * SOFTWARE.
  */
 
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.lang.StringUtils;
 import org.apache.maven.artifact.factory.ArtifactFactory;
 import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
 import org.apache.maven.artifact.repository.ArtifactRepository;
@@ -35,12 +37,26 @@ import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProjectBuilder;
 import org.apache.maven.rtinfo.RuntimeInformation;
 import org.apache.maven.shared.dependency.tree.DependencyTreeBuilder;
+import org.codehaus.mojo.sonar.ServerCapabilities;
+import org.codehaus.mojo.sonar.ServerCapabilities.Feature;
 import org.codehaus.mojo.sonar.ServerMetadata;
+import org.codehaus.plexus.util.IOUtil;
 import org.sonar.runner.api.EmbeddedRunner;
 import org.sonatype.plexus.components.sec.dispatcher.SecDispatcher;
 import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
 
+import javax.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
 import java.util.Properties;
 
 /**
@@ -49,6 +65,21 @@ import java.util.Properties;
 public class RunnerBootstraper
 {
 
+    /**
+     * Streams the properties through a file instead of building them in memory, false by default
+     */
+    public static final String STREAM_PROPERTIES = "sonar.maven.streamProperties";
+
+    /**
+     * Where the trees of dependencies come from: auto (default), session or legacy, see
+     * {@link DependencyCollector.Mode}
+     */
+    public static final String DEPENDENCY_COLLECTOR = "sonar.maven.dependencyCollector";
+
+    static final String PROPERTIES_FILE = "sonar-project.properties";
+
+    private static final String LOGIN = "sonar.login";
+
     private final RuntimeInformation runtimeInformation;
 
     private final Log log;
@@ -73,6 +104,18 @@ public class RunnerBootstraper
 
     private ServerMetadata server;
 
+    private ModuleProperties speculativeProperties;
+
+    private Exception speculativeFailure;
+
+    private boolean speculativeIncludesPomXml;
+
+    private final PathResolver pathResolver = new PathResolver();
+
+    private final FileAttributesCache fileAttributes = new FileAttributesCache();
+
+    private final DependencyCollector dependencyCollector;
+
     public RunnerBootstraper( RuntimeInformation runtimeInformation, Log log,
                               MavenSession session, LifecycleExecutor lifecycleExecutor,
                               ArtifactFactory artifactFactory, ArtifactRepository localRepository,
@@ -92,6 +135,33 @@ public class RunnerBootstraper
         this.projectBuilder = projectBuilder;
         this.securityDispatcher = securityDispatcher;
         this.server = server;
+        this.dependencyCollector =
+            new DependencyCollector( dependencyTreeBuilder, artifactFactory, localRepository, artifactMetadataSource,
+                                     artifactCollector, dependencyCollectorMode() );
+    }
+
+    /**
+     * Converts the Maven reactor while the version of the server may still be unknown. {@link #execute()} reuses the
+     * result if it was converted for the features of the server.
+     *
+     * @param known features of the server if already known, otherwise the server is assumed to support the latest
+     *            features
+     */
+    public void prepare( @Nullable ServerCapabilities known )
+    {
+        speculativeIncludesPomXml = known == null || known.supports( Feature.FILES_AS_SOURCES );
+        try
+        {
+            speculativeProperties = collectProperties( speculativeIncludesPomXml );
+        }
+        catch ( MojoExecutionException e )
+        {
+            speculativeFailure = e;
+        }
+        catch ( RuntimeException e )
+        {
+            speculativeFailure = e;
+        }
     }
 
     public void execute()
@@ -118,7 +188,8 @@ public class RunnerBootstraper
                   // Include everything else
                   .unmask( "" );
             runner.addExtensions( session, log, lifecycleExecutor, projectBuilder );
-            if ( !server.supportsNewDependencyProperty() )
+            ServerCapabilities capabilities = server.getCapabilities();
+            if ( !capabilities.supports( Feature.NEW_DEPENDENCY_PROPERTY ) )
             {
                 runner.addExtensions( artifactFactory, localRepository, artifactMetadataSource, artifactCollector,
                                       dependencyTreeBuilder );
@@ -127,11 +198,30 @@ public class RunnerBootstraper
             {
                 runner.setProperty( "sonar.verbose", "true" );
             }
-            runner.addProperties( collectProperties() );
+            if ( isEnabled( STREAM_PROPERTIES ) )
+            {
+                // user properties and credentials never reach the disk, they are given to the runner directly
+                Properties userProps = new Properties();
+                userProps.putAll( session.getUserProperties() );
+                userProps.putAll( decryptProperties( userProps ) );
+                runner.addProperties( userProps );
+                // the hierarchy of modules is released once written, before the runner gets the properties
+                File file = writeProperties( properties( capabilities ), runner );
+                loadProperties( runner, file );
+            }
+            else
+            {
+                // properties of modules are only flattened now, as they may have been kept while querying the server
+                Properties props = properties( capabilities ).toProperties();
+                props.putAll( decryptProperties( props ) );
+                runner.addProperties( props );
+            }
 
             // Secret property to manage backward compatibility on SQ side (see ProjectScanContainer)
             runner.setProperty( "sonar.mojoUseRunner", "true" );
 
+            server.verifyPinnedVersion();
+
             runner.execute();
         }
         catch ( Exception e )
@@ -140,19 +230,159 @@ public class RunnerBootstraper
         }
     }
 
-    private Properties collectProperties()
+    @VisibleForTesting
+    ModuleProperties properties( ServerCapabilities capabilities )
+        throws Exception
+    {
+        boolean includePomXml = capabilities.supports( Feature.FILES_AS_SOURCES );
+        if ( speculativeProperties == null && speculativeFailure == null )
+        {
+            return collectProperties( includePomXml );
+        }
+        if ( includePomXml != speculativeIncludesPomXml )
+        {
+            log.debug( "SonarQube " + capabilities.getVersion() + ( includePomXml ? " supports" : " does not support" )
+                + " files as sources, converting again" );
+            speculativeProperties = null;
+            speculativeFailure = null;
+            return collectProperties( includePomXml );
+        }
+        if ( speculativeFailure != null )
+        {
+            throw speculativeFailure;
+        }
+        ModuleProperties result = speculativeProperties;
+        speculativeProperties = null;
+        return result;
+    }
+
+    private boolean isEnabled( String property )
+    {
+        return Boolean.parseBoolean( property( property ) );
+    }
+
+    private DependencyCollector.Mode dependencyCollectorMode()
+    {
+        String value = property( DEPENDENCY_COLLECTOR );
+        if ( StringUtils.isBlank( value ) )
+        {
+            return DependencyCollector.Mode.AUTO;
+        }
+        try
+        {
+            return DependencyCollector.Mode.valueOf( value.trim().toUpperCase( Locale.ENGLISH ) );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            throw new IllegalStateException( "The property " + DEPENDENCY_COLLECTOR
+                + " must be one of auto, session or legacy: " + value, e );
+        }
+    }
+
+    private String property( String property )
+    {
+        return StringUtils.defaultIfEmpty( session.getUserProperties().getProperty( property ),
+                                           session.getTopLevelProject().getProperties().getProperty( property ) );
+    }
+
+    /**
+     * Writes the properties converted from the modules to a file in the Sonar work directory of the top level project,
+     * module by module. Properties of a module equal to the user property of the same key, which the modules inherit
+     * from the runner, are left out. Credentials are set on the runner instead.
+     */
+    private File writeProperties( ModuleProperties properties, final EmbeddedRunner runner )
+        throws IOException
+    {
+        final Properties userProps = session.getUserProperties();
+        File file = new File( MavenProjectConverter.getSonarWorkDir( session.getTopLevelProject() ), PROPERTIES_FILE );
+        File dir = file.getParentFile();
+        if ( !dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory() )
+        {
+            throw new IOException( "Unable to create directory " + dir );
+        }
+        Writer writer = null;
+        try
+        {
+            writer = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( file ), "ISO-8859-1" ) );
+            final PropertiesFileWriter fileWriter = new PropertiesFileWriter( writer );
+            properties.writeTo( new ModuleProperties.Sink()
+            {
+                public void put( String prefix, String key, String value )
+                    throws IOException
+                {
+                    String flattenedKey = prefix + key;
+                    if ( flattenedKey.contains( ".password" ) )
+                    {
+                        runner.setProperty( flattenedKey, decrypt( flattenedKey, value ) );
+                    }
+                    else if ( key.equals( LOGIN ) )
+                    {
+                        runner.setProperty( flattenedKey, value );
+                    }
+                    else if ( !value.equals( userProps.getProperty( key ) ) )
+                    {
+                        fileWriter.put( flattenedKey, value );
+                    }
+                }
+            } );
+            writer.close();
+            writer = null;
+        }
+        finally
+        {
+            IOUtil.close( writer );
+        }
+        log.debug( "Properties written to " + file );
+        return file;
+    }
+
+    /**
+     * Gives the properties of the file to the runner one by one. The file is then deleted.
+     */
+    private void loadProperties( final EmbeddedRunner runner, File file )
+        throws IOException
+    {
+        Properties forwarder = new Properties()
+        {
+            @Override
+            public synchronized Object put( Object key, Object value )
+            {
+                runner.setProperty( (String) key, (String) value );
+                return null;
+            }
+        };
+        InputStream input = null;
+        try
+        {
+            input = new BufferedInputStream( new FileInputStream( file ) );
+            forwarder.load( input );
+        }
+        finally
+        {
+            IOUtil.close( input );
+            file.delete();
+        }
+    }
+
+    private ModuleProperties collectProperties( boolean includePomXml )
         throws MojoExecutionException
     {
-        Properties props =
-            new MavenProjectConverter( log, server.supportsFilesAsSources(),
-                                       new DependencyCollector( dependencyTreeBuilder, artifactFactory,
-                                                                localRepository, artifactMetadataSource,
-                                                                artifactCollector ) ).configure( session.getProjects(),
-                                                                                                 session.getTopLevelProject(),
-                                                                                                 session.getUserProperties() );
-        props.putAll( decryptProperties( props ) );
-
-        return props;
+        ModuleProperties properties =
+            new MavenProjectConverter( log, includePomXml, dependencyCollector, pathResolver,
+                                       fileAttributes ).configureHierarchy( session.getProjects(),
+                                                                            session.getTopLevelProject(),
+                                                                            session.getUserProperties() );
+        log.debug( dependencyCollector.toString() );
+        return properties;
+    }
+
+    /**
+     * @param key key of a property in a module, without the prefix of the module
+     * @return true for the credentials, which are never written to disk
+     */
+    static boolean isCredential( String key )
+    {
+        return key.contains( ".password" ) || key.equals( LOGIN );
     }
 
     public Properties decryptProperties( Properties properties )
@@ -176,15 +406,27 @@ public class RunnerBootstraper
     }
 
     private void decrypt( Properties properties, Properties newProperties, String key )
+    {
+        newProperties.setProperty( key, decrypt( key, properties.getProperty( key ) ) );
+    }
+
+    /**
+     * @return the decrypted value, or the value itself if it can not be decrypted
+     */
+    private String decrypt( String key, String value )
     {
         try
         {
-            String decrypted = securityDispatcher.decrypt( properties.getProperty( key ) );
-            newProperties.setProperty( key, decrypted );
+            return securityDispatcher.decrypt( value );
         }
         catch ( SecDispatcherException e )
         {
             log.debug( "Unable to decrypt property " + key, e );
         }
+        catch ( RuntimeException e )
+        {
+            log.warn( "Unable to decrypt property " + key, e );
+        }
+        return value;
     }
 }
@@ -0,0 +1,75 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.codehaus.mojo.sonar.bootstrap;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.shared.dependency.tree.DependencyNode;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tree of dependencies built from the artifacts Maven already resolved for the project, the parent of each artifact
+ * being given by its dependency trail.
+ */
+final class SessionDependencyTree
+{
+
+    private SessionDependencyTree()
+    {
+    }
+
+    /**
+     * @return the tree of dependencies, or null if the dependencies of the project were not resolved by Maven
+     */
+    static DependencyNode of( MavenProject project )
+    {
+        Set<Artifact> artifacts = project.getArtifacts();
+        if ( artifacts.isEmpty() && !project.getDependencies().isEmpty() )
+        {
+            return null;
+        }
+        DependencyNode root = new DependencyNode( project.getArtifact() );
+        Map<String, DependencyNode> nodes = new HashMap<String, DependencyNode>( artifacts.size() * 2 );
+        nodes.put( project.getArtifact().getId(), root );
+        for ( Artifact artifact : artifacts )
+        {
+            nodes.put( artifact.getId(), new DependencyNode( artifact ) );
+        }
+        for ( Artifact artifact : artifacts )
+        {
+            List<String> trail = artifact.getDependencyTrail();
+            if ( trail == null || trail.size() < 2 || !artifact.getId().equals( trail.get( trail.size() - 1 ) ) )
+            {
+                return null;
+            }
+            DependencyNode parent = nodes.get( trail.get( trail.size() - 2 ) );
+            if ( parent == null )
+            {
+                return null;
+            }
+            parent.addChild( nodes.get( artifact.getId() ) );
+        }
+        return root;
+    }
+}
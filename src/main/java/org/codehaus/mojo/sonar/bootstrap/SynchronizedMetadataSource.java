@@ -0,0 +1,81 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.codehaus.mojo.sonar.bootstrap;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.metadata.ArtifactMetadataRetrievalException;
+import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
+import org.apache.maven.artifact.metadata.ResolutionGroup;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.versioning.ArtifactVersion;
+import org.apache.maven.repository.legacy.metadata.MetadataResolutionRequest;
+
+import java.util.List;
+
+/**
+ * Serializes the calls to a legacy metadata source, whose caches are not meant to be used by several threads, so
+ * that the dependencies of several modules can be collected at the same time.
+ */
+class SynchronizedMetadataSource
+    implements ArtifactMetadataSource
+{
+
+    private final ArtifactMetadataSource delegate;
+
+    SynchronizedMetadataSource( ArtifactMetadataSource delegate )
+    {
+        this.delegate = delegate;
+    }
+
+    public synchronized ResolutionGroup retrieve( MetadataResolutionRequest request )
+        throws ArtifactMetadataRetrievalException
+    {
+        return delegate.retrieve( request );
+    }
+
+    public synchronized ResolutionGroup retrieve( Artifact artifact, ArtifactRepository localRepository,
+                                                  List<ArtifactRepository> remoteRepositories )
+        throws ArtifactMetadataRetrievalException
+    {
+        return delegate.retrieve( artifact, localRepository, remoteRepositories );
+    }
+
+    public synchronized List<ArtifactVersion> retrieveAvailableVersions( MetadataResolutionRequest request )
+        throws ArtifactMetadataRetrievalException
+    {
+        return delegate.retrieveAvailableVersions( request );
+    }
+
+    public synchronized List<ArtifactVersion> retrieveAvailableVersions( Artifact artifact,
+                                                                         ArtifactRepository localRepository,
+                                                                         List<ArtifactRepository> remoteRepositories )
+        throws ArtifactMetadataRetrievalException
+    {
+        return delegate.retrieveAvailableVersions( artifact, localRepository, remoteRepositories );
+    }
+
+    public synchronized List<ArtifactVersion> retrieveAvailableVersionsFromDeploymentRepository(
+        Artifact artifact, ArtifactRepository localRepository, ArtifactRepository remoteRepository )
+        throws ArtifactMetadataRetrievalException
+    {
+        return delegate.retrieveAvailableVersionsFromDeploymentRepository( artifact, localRepository,
+                                                                           remoteRepository );
+    }
+}
@@ -26,7 +26,9 @@ package org.codehaus.mojo.sonar;
 
 import org.junit.Test;
 
+import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import java.io.IOException;
 import java.net.URL;
@@ -86,6 +88,41 @@ public class HttpsTrustTest
         assertThat( connection1.getSSLSocketFactory() ).isSameAs( connection2.getSSLSocketFactory() );
     }
 
+    @Test
+    public void jvmModeVerifiesHosts()
+        throws Exception
+    {
+        HttpsURLConnection connection1 = newHttpsConnection();
+        HostnameVerifier defaultVerifier = connection1.getHostnameVerifier();
+        HttpsTrust.forMode( TrustMode.JVM ).trust( connection1 );
+        HttpsURLConnection connection2 = newHttpsConnection();
+        HttpsTrust.forMode( TrustMode.JVM ).trust( connection2 );
+
+        assertThat( connection1.getHostnameVerifier() ).isSameAs( defaultVerifier );
+        assertThat( connection1.getSSLSocketFactory() ).isSameAs( connection2.getSSLSocketFactory() );
+        assertThat( connection1.getSSLSocketFactory() ).isNotSameAs( HttpsURLConnection.getDefaultSSLSocketFactory() );
+        assertThat( HttpsTrust.forMode( TrustMode.ALL ) ).isSameAs( HttpsTrust.INSTANCE );
+    }
+
+    @Test
+    public void tuneSessionCache()
+        throws Exception
+    {
+        SSLContext context = new HttpsTrust.Ssl().newContext( new HttpsTrust.AlwaysTrustManager() );
+
+        assertThat( context.getClientSessionContext().getSessionCacheSize() )
+            .isEqualTo( HttpsTrust.SESSION_CACHE_SIZE );
+        assertThat( context.getClientSessionContext().getSessionTimeout() )
+            .isEqualTo( HttpsTrust.SESSION_TIMEOUT_SECONDS );
+    }
+
+    @Test
+    public void parseTrustMode()
+    {
+        assertThat( TrustMode.fromString( "jvm" ) ).isEqualTo( TrustMode.JVM );
+        assertThat( TrustMode.fromString( " ALL" ) ).isEqualTo( TrustMode.ALL );
+    }
+
     @Test
     public void testAlwaysTrustManager()
         throws Exception
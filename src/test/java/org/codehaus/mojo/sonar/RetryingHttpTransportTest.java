@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.codehaus.mojo.sonar;
+
+import org.codehaus.mojo.sonar.mock.MockHttpServerInterceptor;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+public class RetryingHttpTransportTest
+{
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Rule
+    public MockHttpServerInterceptor mockHttp = new MockHttpServerInterceptor();
+
+    private String url;
+
+    private HttpTransport delegate = new DefaultHttpTransport( 1000, 1000 );
+
+    private RetryPolicy policy = new RetryPolicy( 3, 1L, 10L, 0.5 );
+
+    @Before
+    public void prepare()
+    {
+        url = "http://localhost:" + mockHttp.getPort() + "/api/server/version";
+    }
+
+    @Test
+    public void shouldRetryTransientFailures()
+    {
+        mockHttp.setMockResponseData( "overloaded" );
+        mockHttp.setMockResponseStatus( 503 );
+
+        try
+        {
+            new RetryingHttpTransport( delegate, policy, null ).get( url );
+            fail();
+        }
+        catch ( IOException e )
+        {
+            assertThat( ( (HttpStatusException) e ).getStatus() ).isEqualTo( 503 );
+        }
+        assertThat( mockHttp.getRequestCount() ).isEqualTo( 3 );
+    }
+
+    @Test
+    public void shouldNotRetryClientErrors()
+    {
+        mockHttp.setMockResponseData( "not found" );
+        mockHttp.setMockResponseStatus( 404 );
+
+        try
+        {
+            new RetryingHttpTransport( delegate, policy, null ).get( url );
+            fail();
+        }
+        catch ( IOException e )
+        {
+            assertThat( mockHttp.getRequestCount() ).isEqualTo( 1 );
+        }
+    }
+
+    @Test
+    public void shouldFailFastWhileCircuitIsOpen()
+        throws IOException
+    {
+        File dir = temp.newFolder();
+        mockHttp.setMockResponseData( "overloaded" );
+        mockHttp.setMockResponseStatus( 503 );
+
+        HttpTransport transport =
+            new RetryingHttpTransport( delegate, policy, new CircuitBreaker( dir, url, 1, 60000L ) );
+        try
+        {
+            transport.get( url );
+            fail();
+        }
+        catch ( HttpStatusException e )
+        {
+            assertThat( mockHttp.getRequestCount() ).isEqualTo( 3 );
+        }
+
+        // state is shared with the following builds
+        transport = new RetryingHttpTransport( delegate, policy, new CircuitBreaker( dir, url, 1, 60000L ) );
+        try
+        {
+            transport.get( url );
+            fail();
+        }
+        catch ( IOException e )
+        {
+            assertThat( e.getMessage() ).contains( "are suspended" );
+            assertThat( mockHttp.getRequestCount() ).isEqualTo( 3 );
+        }
+    }
+
+    @Test
+    public void shouldCloseCircuitOnSuccess()
+        throws IOException
+    {
+        File dir = temp.newFolder();
+        CircuitBreaker circuitBreaker = new CircuitBreaker( dir, url, 2, 60000L );
+        circuitBreaker.recordFailure();
+        mockHttp.setMockResponseData( "5.0" );
+
+        assertThat( new RetryingHttpTransport( delegate, policy, circuitBreaker ).get( url ) ).isEqualTo( "5.0" );
+
+        circuitBreaker.recordFailure();
+        assertThat( circuitBreaker.openUntil() ).isEqualTo( 0L );
+    }
+
+    @Test
+    public void shouldGrowBackoffExponentially()
+    {
+        RetryPolicy noJitter = new RetryPolicy( 5, 100L, 350L, 0.0 );
+        Random random = new Random();
+
+        assertThat( noJitter.backoff( 1, random ) ).isEqualTo( 100L );
+        assertThat( noJitter.backoff( 2, random ) ).isEqualTo( 200L );
+        assertThat( noJitter.backoff( 3, random ) ).isEqualTo( 350L );
+
+        long jittered = new RetryPolicy( 5, 100L, 350L, 0.5 ).backoff( 2, random );
+        assertThat( jittered ).isGreaterThanOrEqualTo( 100L ).isLessThanOrEqualTo( 200L );
+    }
+}
@@ -23,16 +23,28 @@
  */
 package org.codehaus.mojo.sonar;
 
+import org.codehaus.mojo.sonar.mock.MockHttpServerInterceptor;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
 
 public class ServerMetadataTest
 {
     private static final String URL = "http://test";
 
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Rule
+    public MockHttpServerInterceptor mockHttp = new MockHttpServerInterceptor();
+
     @Test
     public void shouldReturnAValidResult()
         throws IOException
@@ -65,6 +77,213 @@ public class ServerMetadataTest
         server.getVersion();
     }
 
+    @Test
+    public void shouldQueryVersionThroughTransport()
+    {
+        mockHttp.setMockResponseData( "4.3" );
+        ServerMetadata server = new ServerMetadata( "http://localhost:" + mockHttp.getPort() );
+
+        assertThat( server.getVersion() ).isEqualTo( "4.3" );
+    }
+
+    @Test
+    public void shouldReuseTransportConnections()
+        throws IOException
+    {
+        mockHttp.setMockResponseData( "4.3" );
+        HttpTransport transport = DefaultHttpTransport.getInstance();
+        String url = "http://localhost:" + mockHttp.getPort() + "/api/server/version";
+
+        for ( int i = 0; i < 3; i++ )
+        {
+            assertThat( transport.get( url ) ).isEqualTo( "4.3" );
+        }
+        assertThat( mockHttp.getRequestCount() ).isEqualTo( 3 );
+        assertThat( mockHttp.getConnectionCount() ).isEqualTo( 1 );
+    }
+
+    @Test
+    public void shouldPrefetchVersionInBackground()
+    {
+        mockHttp.setMockResponseData( "5.0" );
+        ServerMetadata server = new ServerMetadata( "http://localhost:" + mockHttp.getPort() );
+        server.prefetchVersion();
+
+        assertThat( server.getVersion() ).isEqualTo( "5.0" );
+        assertThat( server.supportsNewDependencyProperty() ).isTrue();
+    }
+
+    @Test( expected = IllegalStateException.class )
+    public void shouldReportPrefetchFailure()
+    {
+        ServerMetadata server = new ServerMetadata( "http://unknown.foo" );
+        server.prefetchVersion();
+        server.getVersion();
+    }
+
+    @Test( expected = IllegalStateException.class )
+    public void shouldFailOnInvalidStatus()
+    {
+        mockHttp.setMockResponseData( "error" );
+        mockHttp.setMockResponseStatus( 500 );
+        new ServerMetadata( "http://localhost:" + mockHttp.getPort() ).getVersion();
+    }
+
+    @Test
+    public void shouldReuseCachedVersion()
+        throws IOException
+    {
+        File cacheDir = temp.newFolder();
+        final AtomicInteger calls = new AtomicInteger();
+        ServerMetadataCache cache = new ServerMetadataCache( cacheDir, 60000L );
+
+        for ( int i = 0; i < 2; i++ )
+        {
+            ServerMetadata server = new ServerMetadata( URL, cache )
+            {
+                @Override
+                protected String remoteContent( String path )
+                {
+                    calls.incrementAndGet();
+                    return "4.5";
+                }
+            };
+            assertThat( server.getVersion() ).isEqualTo( "4.5" );
+            assertThat( server.supportsFilesAsSources() ).isTrue();
+        }
+        assertThat( calls.get() ).isEqualTo( 1 );
+        assertThat( new ServerMetadataCache( cacheDir, 60000L ).getCapabilities( URL ) )
+            .isEqualTo( ServerCapabilities.of( "4.5" ) );
+        assertThat( new ServerMetadataCache( cacheDir, 60000L ).getCapabilities( "http://other" ) ).isNull();
+    }
+
+    @Test
+    public void shouldIgnoreExpiredCacheEntry()
+        throws Exception
+    {
+        File cacheDir = temp.newFolder();
+        new ServerMetadataCache( cacheDir, 60000L ).putCapabilities( URL, ServerCapabilities.of( "4.5" ) );
+        Thread.sleep( 10L );
+
+        assertThat( new ServerMetadataCache( cacheDir, 1L ).getCapabilities( URL ) ).isNull();
+    }
+
+    @Test
+    public void shouldKnowCapabilitiesWithoutQueryingServer()
+        throws IOException
+    {
+        File cacheDir = temp.newFolder();
+        ServerMetadata server = new ServerMetadata( "http://localhost:" + mockHttp.getPort(),
+                                                    new ServerMetadataCache( cacheDir, 60000L ) );
+        assertThat( server.getKnownCapabilities() ).isNull();
+
+        new ServerMetadataCache( cacheDir, 60000L ).putCapabilities( server.getUrl(), ServerCapabilities.of( "4.3" ) );
+        assertThat( server.getKnownCapabilities() ).isEqualTo( ServerCapabilities.of( "4.3" ) );
+
+        server.pinVersion( "5.0", false );
+        assertThat( server.getKnownCapabilities() ).isEqualTo( ServerCapabilities.of( "5.0" ) );
+        assertThat( mockHttp.getRequestCount() ).isEqualTo( 0 );
+    }
+
+    @Test
+    public void shouldComputeCapabilitiesOnce()
+    {
+        final AtomicInteger calls = new AtomicInteger();
+        ServerMetadata server = new ServerMetadata( URL )
+        {
+            @Override
+            protected String remoteContent( String path )
+            {
+                calls.incrementAndGet();
+                return "4.4";
+            }
+        };
+
+        assertThat( server.supportsMaven3_1() ).isTrue();
+        assertThat( server.supportsSonarQubeRunnerBootstrappingFromMaven() ).isTrue();
+        assertThat( server.supportsFilesAsSources() ).isFalse();
+        assertThat( server.getCapabilities() ).isSameAs( server.getCapabilities() );
+        assertThat( calls.get() ).isEqualTo( 1 );
+    }
+
+    @Test
+    public void shouldNotQueryServerWhenVersionIsPinned()
+    {
+        final AtomicInteger calls = new AtomicInteger();
+        ServerMetadata server = new ServerMetadata( URL )
+        {
+            @Override
+            protected String remoteContent( String path )
+            {
+                calls.incrementAndGet();
+                return "4.5.2";
+            }
+        };
+        server.pinVersion( "4.5", false );
+        server.prefetchVersion();
+
+        assertThat( server.getVersion() ).isEqualTo( "4.5" );
+        assertThat( server.supportsFilesAsSources() ).isTrue();
+        server.verifyPinnedVersion();
+        assertThat( calls.get() ).isEqualTo( 0 );
+    }
+
+    @Test
+    public void shouldQueryServerWhenPinnedVersionIsVerified()
+    {
+        final AtomicInteger calls = new AtomicInteger();
+        ServerMetadata server = new ServerMetadata( URL )
+        {
+            @Override
+            protected String remoteContent( String path )
+            {
+                calls.incrementAndGet();
+                return "4.5.2";
+            }
+        };
+        server.pinVersion( "4.5", true );
+
+        assertThat( server.getVersion() ).isEqualTo( "4.5" );
+        assertThat( calls.get() ).isEqualTo( 0 );
+
+        server.verifyPinnedVersion();
+        assertThat( calls.get() ).isEqualTo( 1 );
+    }
+
+    @Test
+    public void shouldFailWhenPinnedVersionIsWrong()
+    {
+        mockHttp.setMockResponseData( "4.3" );
+        ServerMetadata server = new ServerMetadata( "http://localhost:" + mockHttp.getPort() );
+        server.pinVersion( "5.0", true );
+        server.prefetchVersion();
+
+        assertThat( server.supportsNewDependencyProperty() ).isTrue();
+        try
+        {
+            server.verifyPinnedVersion();
+            fail();
+        }
+        catch ( IllegalStateException e )
+        {
+            assertThat( e.getMessage() ).contains( "is version 4.3 but the analysis was prepared for version 5.0" );
+        }
+    }
+
+    @Test
+    public void testCapabilities()
+    {
+        ServerCapabilities capabilities = ServerCapabilities.of( "4.5.1" );
+        assertThat( capabilities.getVersion() ).isEqualTo( "4.5.1" );
+        assertThat( capabilities.getFeatures() ).containsOnly( ServerCapabilities.Feature.MAVEN_3,
+                                                               ServerCapabilities.Feature.MAVEN_3_1,
+                                                               ServerCapabilities.Feature.RUNNER_BOOTSTRAPPING,
+                                                               ServerCapabilities.Feature.FILES_AS_SOURCES );
+        assertThat( ServerCapabilities.of( "2.3" ).getFeatures() ).isEmpty();
+        assertThat( ServerCapabilities.of( "10.0" ).getFeatures() )
+            .containsOnly( (Object[]) ServerCapabilities.Feature.values() );
+    }
+
     @Test
     public void testSonarVersionPrior2Dot4()
     {
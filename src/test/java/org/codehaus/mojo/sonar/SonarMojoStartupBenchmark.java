@@ -0,0 +1,135 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.codehaus.mojo.sonar;
+
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.repository.DefaultArtifactRepository;
+import org.apache.maven.artifact.repository.layout.DefaultRepositoryLayout;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.testing.MojoRule;
+import org.codehaus.mojo.sonar.benchmark.Measurements;
+import org.codehaus.mojo.sonar.mock.MockHttpServerInterceptor;
+import org.codehaus.mojo.sonar.mock.MockResponseProfile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+/**
+ * Measures the time spent by {@link SonarMojo} from the beginning of its execution until the SonarQube runner is
+ * invoked, against a mocked server with various response profiles. The sample project dumps the runner properties
+ * instead of running an analysis, so the runner itself is not measured.
+ * <p/>
+ * Not part of the regular test suite, run it with <code>mvn test -Dtest=SonarMojoStartupBenchmark</code>.
+ * Iterations are set with <code>-Dbenchmark.iterations</code> and <code>-Dbenchmark.warmup</code>, results are
+ * written to <code>target/benchmarks</code>.
+ */
+public class SonarMojoStartupBenchmark
+{
+
+    private static final File SAMPLE_PROJECT =
+        new File( "src/test/resources/org/codehaus/mojo/sonar/SonarMojoTest/sample-project" );
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Rule
+    public MojoRule mojoRule = new MojoRule();
+
+    @Rule
+    public MockHttpServerInterceptor mockHttp = new MockHttpServerInterceptor();
+
+    @Test
+    public void fastServer()
+        throws Exception
+    {
+        run( MockResponseProfile.fast(), 0 );
+    }
+
+    @Test
+    public void highLatency()
+        throws Exception
+    {
+        run( new MockResponseProfile( "latency" ).latency( 200L, 50L ), 0 );
+    }
+
+    @Test
+    public void slowBody()
+        throws Exception
+    {
+        run( new MockResponseProfile( "slow-body" ).slowBody( 1, 50L ), 0 );
+    }
+
+    @Test
+    public void flakyServerWithRetries()
+        throws Exception
+    {
+        run( new MockResponseProfile( "flaky" ).failures( 0.3, 503 ).seed( 7L ), 3 );
+    }
+
+    private void run( MockResponseProfile profile, int retries )
+        throws Exception
+    {
+        mockHttp.setMockResponseData( "4.5" );
+        mockHttp.setProfile( profile );
+        int warmup = Measurements.warmup( 3 );
+        int iterations = Measurements.iterations( 20 );
+
+        Measurements measurements = new Measurements( "sonar-mojo-startup-" + profile.getName() );
+        for ( int i = 0; i < warmup + iterations; i++ )
+        {
+            SonarMojo mojo = newMojo( retries );
+            long start = System.nanoTime();
+            try
+            {
+                mojo.execute();
+                if ( i >= warmup )
+                {
+                    measurements.add( System.nanoTime() - start );
+                }
+            }
+            catch ( MojoExecutionException e )
+            {
+                measurements.addFailure();
+            }
+        }
+        System.out.println( profile );
+        measurements.report();
+    }
+
+    private SonarMojo newMojo( int retries )
+        throws Exception
+    {
+        ArtifactRepository localRepository =
+            new DefaultArtifactRepository( "local", temp.newFolder().toURI().toURL().toString(),
+                                           new DefaultRepositoryLayout() );
+        SonarMojo mojo = (SonarMojo) mojoRule.lookupConfiguredMojo( SAMPLE_PROJECT, "sonar" );
+        mojo.setLocalRepository( localRepository );
+        mojo.setSonarHostURL( "http://localhost:" + mockHttp.getPort() );
+        mojoRule.setVariableValueToObject( mojo, "retries", retries );
+        mojoRule.setVariableValueToObject( mojo, "retryBackoff", 10L );
+        return mojo;
+    }
+}
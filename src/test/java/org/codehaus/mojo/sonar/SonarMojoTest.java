@@ -28,6 +28,7 @@ import org.apache.commons.io.IOUtils;
 import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.artifact.repository.DefaultArtifactRepository;
 import org.apache.maven.artifact.repository.layout.DefaultRepositoryLayout;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.testing.MojoRule;
 import org.codehaus.mojo.sonar.mock.MockHttpServerInterceptor;
@@ -122,6 +123,19 @@ public class SonarMojoTest
 
     }
 
+    @Test
+    public void failOnUnknownTrustMode()
+        throws Exception
+    {
+        SonarMojo mojo =
+            getMojo( new File( "src/test/resources/org/codehaus/mojo/sonar/SonarMojoTest/sample-project" ) );
+        mojoRule.setVariableValueToObject( mojo, "sslTrustMode", "none" );
+
+        thrown.expect( MojoExecutionException.class );
+        thrown.expectMessage( "Unknown SSL trust mode 'none'" );
+        mojo.execute();
+    }
+
     @Test
     public void executeMojo()
         throws Exception
@@ -244,6 +258,68 @@ public class SonarMojoTest
                                  libJson, true );
     }
 
+    @Test
+    public void streamProperties()
+        throws Exception
+    {
+        mockHttp.setMockResponseData( "5.0" );
+
+        Properties userProps = new Properties();
+        userProps.setProperty( "sonar.login", "admin" );
+        Properties inMemory = executeExportDependencies( userProps, new Properties() );
+
+        userProps.setProperty( "sonar.maven.streamProperties", "true" );
+        Properties streamed = executeExportDependencies( userProps, new Properties() );
+
+        assertThat( streamed.remove( "sonar.maven.streamProperties" ) ).isEqualTo( "true" );
+        // given to the runner without being written to disk
+        assertThat( streamed.getProperty( "sonar.login" ) ).isEqualTo( "admin" );
+        assertThat( streamed ).isEqualTo( inMemory );
+        assertThat( new File( "src/test/resources/org/codehaus/mojo/sonar/SonarMojoTest/export-dependencies",
+                              "target/sonar/sonar-project.properties" ) ).doesNotExist();
+    }
+
+    @Test
+    public void streamPropertiesInterpolatedFromUserProperties()
+        throws Exception
+    {
+        mockHttp.setMockResponseData( "5.0" );
+
+        // <sonar.branch>${branch}</sonar.branch> in the pom, built with -Dbranch=develop
+        Properties userProps = new Properties();
+        userProps.setProperty( "branch", "develop" );
+        Properties modelProps = new Properties();
+        modelProps.setProperty( "sonar.branch", "develop" );
+        Properties inMemory = executeExportDependencies( userProps, modelProps );
+
+        userProps.setProperty( "sonar.maven.streamProperties", "true" );
+        Properties streamed = executeExportDependencies( userProps, modelProps );
+
+        assertThat( streamed.remove( "sonar.maven.streamProperties" ) ).isEqualTo( "true" );
+        assertThat( streamed.getProperty( "sonar.branch" ) ).isEqualTo( "develop" );
+        assertThat( streamed ).isEqualTo( inMemory );
+    }
+
+    private Properties executeExportDependencies( Properties userProps, Properties modelProps )
+        throws Exception
+    {
+        File localRepo = new File( "src/test/resources/org/codehaus/mojo/sonar/SonarMojoTest/repository" );
+        final ArtifactRepository localRepository =
+            new DefaultArtifactRepository( "local",
+                                           localRepo.toURI().toURL().toString(), new DefaultRepositoryLayout() );
+
+        File baseDir =
+            new File( "src/test/resources/org/codehaus/mojo/sonar/SonarMojoTest/export-dependencies" );
+        SonarMojo mojo = getMojo( baseDir );
+        mojo.setLocalRepository( localRepository );
+        mojo.setSonarHostURL( "http://localhost:" + mockHttp.getPort() );
+        MavenSession session = (MavenSession) mojoRule.getVariableValueFromObject( mojo, "session" );
+        session.getUserProperties().putAll( userProps );
+        session.getTopLevelProject().getProperties().putAll( modelProps );
+        mojo.execute();
+        return readProps();
+    }
+
     private void assertPropsContains( MapAssert.Entry... entries )
         throws FileNotFoundException, IOException
     {
@@ -0,0 +1,162 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.codehaus.mojo.sonar.benchmark;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Samples of a benchmark, reported on the console and in <code>target/benchmarks/&lt;name&gt;.txt</code> so that
+ * successive runs can be compared.
+ */
+public class Measurements
+{
+
+    private final String name;
+
+    private final List<Long> samples = new ArrayList<Long>();
+
+    private int failures;
+
+    private long allocatedBytes;
+
+    private int allocations;
+
+    private int operations;
+
+    private String operationUnit;
+
+    public Measurements( String name )
+    {
+        this.name = name;
+    }
+
+    public static int iterations( int defaultValue )
+    {
+        return Integer.getInteger( "benchmark.iterations", defaultValue );
+    }
+
+    public static int warmup( int defaultValue )
+    {
+        return Integer.getInteger( "benchmark.warmup", defaultValue );
+    }
+
+    public void add( long nanos )
+    {
+        samples.add( nanos );
+    }
+
+    /**
+     * Records the bytes allocated by an iteration, reported as a mean per iteration
+     */
+    public void addAllocation( long bytes )
+    {
+        allocatedBytes += bytes;
+        allocations++;
+    }
+
+    /**
+     * @return bytes allocated so far by the current thread, or -1 if the JVM does not tell
+     */
+    public static long allocatedBytes()
+    {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if ( bean instanceof com.sun.management.ThreadMXBean )
+        {
+            return ( (com.sun.management.ThreadMXBean) bean ).getThreadAllocatedBytes( Thread.currentThread().getId() );
+        }
+        return -1L;
+    }
+
+    /**
+     * Reports the throughput too, each sample covering the given number of operations
+     */
+    public void setOperations( int operations, String unit )
+    {
+        this.operations = operations;
+        this.operationUnit = unit;
+    }
+
+    public void addFailure()
+    {
+        failures++;
+    }
+
+    public String report()
+        throws IOException
+    {
+        List<Long> sorted = new ArrayList<Long>( samples );
+        Collections.sort( sorted );
+        long total = 0L;
+        for ( Long sample : sorted )
+        {
+            total += sample;
+        }
+        String report;
+        if ( sorted.isEmpty() )
+        {
+            report = String.format( Locale.ENGLISH, "%s: no sample, %d failures", name, failures );
+        }
+        else
+        {
+            report =
+                String.format( Locale.ENGLISH,
+                               "%s: n=%d failures=%d min=%.2fms median=%.2fms p90=%.2fms max=%.2fms mean=%.2fms",
+                               name, sorted.size(), failures, millis( sorted.get( 0 ) ),
+                               millis( percentile( sorted, 0.5 ) ), millis( percentile( sorted, 0.9 ) ),
+                               millis( sorted.get( sorted.size() - 1 ) ), millis( total / sorted.size() ) );
+        }
+        if ( operations > 0 && total > 0 )
+        {
+            report += String.format( Locale.ENGLISH, " throughput=%.0f %s/s", operations * sorted.size() * 1e9 / total,
+                                     operationUnit );
+        }
+        if ( allocations > 0 )
+        {
+            report += String.format( Locale.ENGLISH, " allocated=%.1fKB/op", allocatedBytes / 1024.0 / allocations );
+        }
+        System.out.println( report );
+        File output = new File( "target/benchmarks", name + ".txt" );
+        FileUtils.writeStringToFile( output, report + "\n", "UTF-8" );
+        return report;
+    }
+
+    private static long percentile( List<Long> sorted, double percentile )
+    {
+        int index = (int) Math.ceil( percentile * sorted.size() ) - 1;
+        return sorted.get( Math.max( 0, Math.min( index, sorted.size() - 1 ) ) );
+    }
+
+    private static double millis( long nanos )
+    {
+        return nanos / 1000000.0;
+    }
+}
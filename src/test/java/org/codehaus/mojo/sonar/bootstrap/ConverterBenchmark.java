@@ -0,0 +1,201 @@
+package org.codehaus.mojo.sonar.bootstrap;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.mojo.sonar.benchmark.Measurements;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Throughput and allocation rate of the steps of the conversion on a synthetic reactor, as a baseline for the work
+ * on the conversion pipeline. The shape of the reactor is set by the system properties <code>benchmark.width</code>,
+ * <code>benchmark.depth</code>, <code>benchmark.classpath</code> and <code>benchmark.sourceRoots</code> (see
+ * {@link SyntheticReactor}). Dependencies are not collected, their cost being measured apart. Run with
+ * <code>mvn test -Dtest=ConverterBenchmark</code>.
+ */
+public class ConverterBenchmark
+{
+
+    @ClassRule
+    public static TemporaryFolder temp = new TemporaryFolder();
+
+    private static SyntheticReactor reactor;
+
+    private static final DependencyCollector NO_DEPENDENCIES = new DependencyCollector( null, null, null, null, null )
+    {
+        @Override
+        public String toJson( MavenProject project )
+        {
+            return "[]";
+        }
+    };
+
+    @BeforeClass
+    public static void generateReactor()
+        throws Exception
+    {
+        reactor =
+            new SyntheticReactor( temp.newFolder(), Integer.getInteger( "benchmark.width", 20 ),
+                                  Integer.getInteger( "benchmark.depth", 2 ),
+                                  Integer.getInteger( "benchmark.classpath", 50 ),
+                                  Integer.getInteger( "benchmark.sourceRoots", 2 ) );
+        System.out.println( "Synthetic reactor: " + reactor );
+    }
+
+    /**
+     * Whole conversion, with the caches of a new build
+     */
+    @Test
+    public void configure()
+        throws Exception
+    {
+        Measurements measurements = measurements( "converter-configure" );
+        int warmup = Measurements.warmup( 3 );
+        for ( int i = 0, n = warmup + Measurements.iterations( 20 ); i < n; i++ )
+        {
+            MavenProjectConverter converter = newConverter();
+            long allocated = Measurements.allocatedBytes();
+            long start = System.nanoTime();
+            Properties props = converter.configure( reactor.getProjects(), reactor.getRoot(), new Properties() );
+            record( measurements, i >= warmup, start, allocated );
+            assertThat( props.getProperty( "sonar.projectKey" ) ).isEqualTo( "com.example.synthetic:root" );
+        }
+        measurements.report();
+    }
+
+    @Test
+    public void merge()
+        throws Exception
+    {
+        MavenProjectConverter converter = newConverter();
+        // sets the user properties used by the conversion
+        converter.configure( reactor.getProjects(), reactor.getRoot(), new Properties() );
+        Measurements measurements = measurements( "converter-merge" );
+        int warmup = Measurements.warmup( 3 );
+        for ( int i = 0, n = warmup + Measurements.iterations( 20 ); i < n; i++ )
+        {
+            long allocated = Measurements.allocatedBytes();
+            long start = System.nanoTime();
+            for ( MavenProject project : reactor.getProjects() )
+            {
+                converter.merge( project, new Properties() );
+            }
+            record( measurements, i >= warmup, start, allocated );
+        }
+        measurements.report();
+    }
+
+    @Test
+    public void removeNested()
+        throws Exception
+    {
+        List<List<File>> roots = new ArrayList<List<File>>();
+        for ( MavenProject project : reactor.getProjects() )
+        {
+            List<File> projectRoots = new ArrayList<File>();
+            projectRoots.add( project.getFile() );
+            projectRoots.addAll( MavenProjectConverter.resolvePaths( project.getCompileSourceRoots(),
+                                                                     project.getBasedir() ) );
+            projectRoots.add( project.getBasedir() );
+            roots.add( projectRoots );
+        }
+        Measurements measurements = measurements( "converter-removeNested" );
+        int warmup = Measurements.warmup( 5 );
+        for ( int i = 0, n = warmup + Measurements.iterations( 50 ); i < n; i++ )
+        {
+            long allocated = Measurements.allocatedBytes();
+            long start = System.nanoTime();
+            for ( List<File> projectRoots : roots )
+            {
+                MavenProjectConverter.removeNested( projectRoots );
+            }
+            record( measurements, i >= warmup, start, allocated );
+        }
+        measurements.report();
+    }
+
+    /**
+     * Lookup of the modules declared in the poms, done while rebuilding the hierarchy
+     */
+    @Test
+    public void findModules()
+        throws Exception
+    {
+        Map<MavenProject, Properties> propsByModule = new HashMap<MavenProject, Properties>();
+        for ( MavenProject project : reactor.getProjects() )
+        {
+            propsByModule.put( project, new Properties() );
+        }
+        Measurements measurements = measurements( "converter-findModules" );
+        int warmup = Measurements.warmup( 5 );
+        for ( int i = 0, n = warmup + Measurements.iterations( 50 ); i < n; i++ )
+        {
+            MavenProjectConverter converter = newConverter();
+            Map<MavenProject, Properties> copy = new HashMap<MavenProject, Properties>( propsByModule );
+            long allocated = Measurements.allocatedBytes();
+            long start = System.nanoTime();
+            converter.buildHierarchy( reactor.getProjects(), reactor.getRoot(), copy );
+            record( measurements, i >= warmup, start, allocated );
+        }
+        measurements.report();
+    }
+
+    private static MavenProjectConverter newConverter()
+    {
+        return new MavenProjectConverter( mock( Log.class ), false, NO_DEPENDENCIES, new PathResolver(),
+                                          new FileAttributesCache() );
+    }
+
+    private static Measurements measurements( String name )
+    {
+        Measurements measurements = new Measurements( name );
+        measurements.setOperations( reactor.getProjects().size(), "modules" );
+        return measurements;
+    }
+
+    private static void record( Measurements measurements, boolean measured, long start, long allocated )
+    {
+        long end = System.nanoTime();
+        if ( measured )
+        {
+            measurements.add( end - start );
+            measurements.addAllocation( Measurements.allocatedBytes() - allocated );
+        }
+    }
+}
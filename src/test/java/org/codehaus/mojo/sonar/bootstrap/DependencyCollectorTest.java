@@ -0,0 +1,282 @@
+package org.codehaus.mojo.sonar.bootstrap;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import com.google.common.collect.Interners;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.ArtifactCollector;
+import org.apache.maven.artifact.resolver.filter.ArtifactFilter;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.shared.dependency.tree.DependencyNode;
+import org.apache.maven.shared.dependency.tree.DependencyTreeBuilder;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class DependencyCollectorTest
+{
+
+    private static final String COMMONS_LANG_JSON =
+        "[{\"k\":\"commons-lang:commons-lang\",\"v\":\"2.6\",\"s\":\"compile\",\"d\":[]}]";
+
+    private DependencyTreeBuilder treeBuilder = mock( DependencyTreeBuilder.class );
+
+    private DependencyCollector collector = new DependencyCollector( treeBuilder, null, null, null, null );
+
+    @Test
+    public void reuseTreeOfModulesWithSameDependencies()
+        throws Exception
+    {
+        MavenProject module1 = project( "module1", "commons-lang:commons-lang:2.6" );
+        MavenProject module2 = project( "module2", "commons-lang:commons-lang:2.6" );
+        treeOf( module1, artifact( "commons-lang:commons-lang:2.6" ) );
+        treeOf( module2, artifact( "commons-lang:commons-lang:2.6" ) );
+
+        assertThat( collector.toJson( module1 ) ).isEqualTo( COMMONS_LANG_JSON );
+        assertThat( collector.toJson( module2 ) ).isEqualTo( COMMONS_LANG_JSON );
+        verify( treeBuilder, times( 1 ) ).buildDependencyTree( any( MavenProject.class ),
+                                                               any( ArtifactRepository.class ),
+                                                               any( ArtifactFactory.class ),
+                                                               any( ArtifactMetadataSource.class ),
+                                                               any( ArtifactFilter.class ),
+                                                               any( ArtifactCollector.class ) );
+        assertThat( collector.toString() ).isEqualTo( "Dependency trees: 1 resolved, 1 reused, 0 from the session" );
+    }
+
+    @Test
+    public void resolveTreeOnceWhenCollectedConcurrently()
+        throws Exception
+    {
+        final List<MavenProject> modules = new ArrayList<MavenProject>();
+        for ( int i = 0; i < 8; i++ )
+        {
+            MavenProject module = project( "module" + i, "commons-lang:commons-lang:2.6" );
+            treeOf( module, artifact( "commons-lang:commons-lang:2.6" ) );
+            modules.add( module );
+        }
+        ExecutorService executor = Executors.newFixedThreadPool( modules.size() );
+        try
+        {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for ( final MavenProject module : modules )
+            {
+                results.add( executor.submit( new Callable<String>()
+                {
+                    public String call()
+                    {
+                        return collector.toJson( module );
+                    }
+                } ) );
+            }
+            for ( Future<String> result : results )
+            {
+                assertThat( result.get() ).isEqualTo( COMMONS_LANG_JSON );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        assertThat( collector.toString() ).isEqualTo( "Dependency trees: 1 resolved, 7 reused, 0 from the session" );
+    }
+
+    @Test
+    public void resolveTreeOfModulesWithOtherDependencies()
+        throws Exception
+    {
+        MavenProject module1 = project( "module1", "commons-lang:commons-lang:2.6" );
+        MavenProject module2 = project( "module2", "commons-lang:commons-lang:2.5" );
+        treeOf( module1, artifact( "commons-lang:commons-lang:2.6" ) );
+        treeOf( module2, artifact( "commons-lang:commons-lang:2.5" ) );
+
+        assertThat( collector.toJson( module1 ) ).isEqualTo( COMMONS_LANG_JSON );
+        assertThat( collector.toJson( module2 ) ).isEqualTo( COMMONS_LANG_JSON.replace( "2.6", "2.5" ) );
+        assertThat( collector.toString() ).isEqualTo( "Dependency trees: 2 resolved, 0 reused, 0 from the session" );
+    }
+
+    @Test
+    public void doNotReuseTreeIncludingTheProject()
+        throws Exception
+    {
+        MavenProject module1 = project( "module1", "com.foo:library:1.0" );
+        MavenProject module2 = project( "module2", "com.foo:library:1.0" );
+        // the library depends on module2, which therefore is not part of its own tree
+        DependencyNode library = new DependencyNode( artifact( "com.foo:library:1.0" ) );
+        library.addChild( new DependencyNode( artifact( "com.foo:module2:1.0" ) ) );
+        DependencyNode root1 = new DependencyNode( module1.getArtifact() );
+        root1.addChild( library );
+        when( treeBuilder.buildDependencyTree( eq( module1 ), any( ArtifactRepository.class ),
+                                               any( ArtifactFactory.class ), any( ArtifactMetadataSource.class ),
+                                               any( ArtifactFilter.class ), any( ArtifactCollector.class ) ) )
+            .thenReturn( root1 );
+        treeOf( module2, artifact( "com.foo:library:1.0" ) );
+
+        assertThat( collector.toJson( module1 ) ).contains( "com.foo:module2" );
+        assertThat( collector.toJson( module2 ) ).doesNotContain( "com.foo:module2" );
+    }
+
+    @Test
+    public void writeIncludedDependenciesOnly()
+        throws Exception
+    {
+        MavenProject module = project( "module", "com.foo:library:1.0", "com.foo:other:1.0" );
+        DependencyNode root = new DependencyNode( module.getArtifact() );
+        DependencyNode library = new DependencyNode( artifact( "com.foo:library:1.0" ) );
+        library.addChild( new DependencyNode( artifact( "com.foo:transitive:2.0" ) ) );
+        root.addChild( library );
+        DependencyNode other = new DependencyNode( artifact( "com.foo:other:1.0" ) );
+        other.addChild( new DependencyNode( artifact( "com.foo:transitive:2.0" ), DependencyNode.OMITTED_FOR_DUPLICATE,
+                                            artifact( "com.foo:transitive:2.0" ) ) );
+        root.addChild( other );
+        when( treeBuilder.buildDependencyTree( eq( module ), any( ArtifactRepository.class ),
+                                               any( ArtifactFactory.class ), any( ArtifactMetadataSource.class ),
+                                               any( ArtifactFilter.class ), any( ArtifactCollector.class ) ) )
+            .thenReturn( root );
+
+        assertThat( collector.toJson( module ) ).isEqualTo( "[{\"k\":\"com.foo:library\",\"v\":\"1.0\",\"s\":\"compile\",\"d\":["
+            + "{\"k\":\"com.foo:transitive\",\"v\":\"2.0\",\"s\":\"compile\",\"d\":[]}]},"
+            + "{\"k\":\"com.foo:other\",\"v\":\"1.0\",\"s\":\"compile\",\"d\":[]}]" );
+    }
+
+    @Test
+    public void escapeValues()
+    {
+        MavenProject module = project( "module" );
+        DependencyNode root = new DependencyNode( module.getArtifact() );
+        root.addChild( new DependencyNode( artifact( "com.foo:quote\"back\\slash:1.0\ttab" ) ) );
+        StringBuilder json = new StringBuilder();
+
+        DependencyCollector.writeJson( root, new DependencyJsonWriter( json, Interners.<String>newStrongInterner() ) );
+
+        assertThat( json.toString() ).isEqualTo( "[{\"k\":\"com.foo:quote\\\"back\\\\slash\",\"v\":\"1.0\\u0009tab\","
+            + "\"s\":\"compile\",\"d\":[]}]" );
+    }
+
+    @Test
+    public void buildTreeFromArtifactsResolvedByMaven()
+    {
+        MavenProject module = project( "module", "com.foo:library:1.0" );
+        Artifact library = artifact( "com.foo:library:1.0" );
+        library.setDependencyTrail( Arrays.asList( module.getArtifact().getId(), library.getId() ) );
+        Artifact transitive = artifact( "com.foo:transitive:2.0" );
+        transitive.setDependencyTrail( Arrays.asList( module.getArtifact().getId(), library.getId(),
+                                                      transitive.getId() ) );
+        module.setArtifacts( new LinkedHashSet<Artifact>( Arrays.asList( library, transitive ) ) );
+        DependencyCollector sessionCollector =
+            new DependencyCollector( treeBuilder, null, null, null, null, DependencyCollector.Mode.AUTO );
+
+        assertThat( sessionCollector.toJson( module ) ).isEqualTo( "[{\"k\":\"com.foo:library\",\"v\":\"1.0\","
+            + "\"s\":\"compile\",\"d\":[{\"k\":\"com.foo:transitive\",\"v\":\"2.0\",\"s\":\"compile\","
+            + "\"d\":[]}]}]" );
+        verifyZeroInteractions( treeBuilder );
+        assertThat( sessionCollector.toString() )
+            .isEqualTo( "Dependency trees: 0 resolved, 0 reused, 1 from the session" );
+    }
+
+    @Test
+    public void fallBackToLegacyTreeWhenNotResolvedByMaven()
+        throws Exception
+    {
+        MavenProject module = project( "module", "commons-lang:commons-lang:2.6" );
+        treeOf( module, artifact( "commons-lang:commons-lang:2.6" ) );
+        DependencyCollector sessionCollector =
+            new DependencyCollector( treeBuilder, null, null, null, null, DependencyCollector.Mode.AUTO );
+
+        assertThat( sessionCollector.toJson( module ) ).isEqualTo( COMMONS_LANG_JSON );
+        assertThat( sessionCollector.toString() )
+            .isEqualTo( "Dependency trees: 1 resolved, 0 reused, 0 from the session" );
+    }
+
+    @Test( expected = IllegalStateException.class )
+    public void failWhenNotResolvedByMavenInSessionMode()
+    {
+        MavenProject module = project( "module", "commons-lang:commons-lang:2.6" );
+
+        new DependencyCollector( treeBuilder, null, null, null, null, DependencyCollector.Mode.SESSION )
+            .toJson( module );
+    }
+
+    private void treeOf( MavenProject project, Artifact... dependencies )
+        throws Exception
+    {
+        DependencyNode root = new DependencyNode( project.getArtifact() );
+        for ( Artifact dependency : dependencies )
+        {
+            root.addChild( new DependencyNode( dependency ) );
+        }
+        when( treeBuilder.buildDependencyTree( eq( project ), any( ArtifactRepository.class ),
+                                               any( ArtifactFactory.class ), any( ArtifactMetadataSource.class ),
+                                               any( ArtifactFilter.class ), any( ArtifactCollector.class ) ) )
+            .thenReturn( root );
+    }
+
+    private static MavenProject project( String artifactId, String... dependencies )
+    {
+        MavenProject project = new MavenProject();
+        project.getModel().setGroupId( "com.foo" );
+        project.getModel().setArtifactId( artifactId );
+        project.getModel().setVersion( "1.0" );
+        project.setArtifact( artifact( "com.foo:" + artifactId + ":1.0" ) );
+        for ( String coordinates : dependencies )
+        {
+            String[] parts = coordinates.split( ":" );
+            Dependency dependency = new Dependency();
+            dependency.setGroupId( parts[0] );
+            dependency.setArtifactId( parts[1] );
+            dependency.setVersion( parts[2] );
+            project.getModel().addDependency( dependency );
+        }
+        return project;
+    }
+
+    private static Artifact artifact( String coordinates )
+    {
+        String[] parts = coordinates.split( ":" );
+        return new DefaultArtifact( parts[0], parts[1], parts[2], Artifact.SCOPE_COMPILE, "jar", null,
+                                    new DefaultArtifactHandler( "jar" ) );
+    }
+}
@@ -0,0 +1,271 @@
+package org.codehaus.mojo.sonar.bootstrap;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.shared.dependency.tree.DependencyNode;
+import org.apache.maven.shared.dependency.tree.filter.AncestorOrSelfDependencyNodeFilter;
+import org.apache.maven.shared.dependency.tree.filter.DependencyNodeFilter;
+import org.apache.maven.shared.dependency.tree.filter.StateDependencyNodeFilter;
+import org.apache.maven.shared.dependency.tree.traversal.BuildingDependencyNodeVisitor;
+import org.apache.maven.shared.dependency.tree.traversal.CollectingDependencyNodeVisitor;
+import org.apache.maven.shared.dependency.tree.traversal.DependencyNodeVisitor;
+import org.apache.maven.shared.dependency.tree.traversal.FilteringDependencyNodeVisitor;
+import org.codehaus.mojo.sonar.benchmark.Measurements;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Throughput and allocation of the serialization of <code>sonar.maven.projectDependencies</code>, compared with the
+ * previous implementation that first copied the tree into <code>Dependency</code> objects. Measured on a wide graph
+ * (500 direct dependencies), a deep one (a chain of 50 dependencies) and a bushy one (6 dependencies per node, 3
+ * levels, half of the leaves omitted as duplicates). Run with <code>mvn test -Dtest=DependencyJsonBenchmark</code>.
+ */
+public class DependencyJsonBenchmark
+{
+
+    private final DefaultArtifactHandler handler = new DefaultArtifactHandler( "jar" );
+
+    private int artifacts;
+
+    @Test
+    public void wideGraph()
+        throws Exception
+    {
+        DependencyNode root = node();
+        for ( int i = 0; i < 500; i++ )
+        {
+            root.addChild( node() );
+        }
+        run( "dependency-json-wide", root, 20 );
+    }
+
+    @Test
+    public void deepGraph()
+        throws Exception
+    {
+        DependencyNode root = node();
+        DependencyNode parent = root;
+        for ( int i = 0; i < 50; i++ )
+        {
+            DependencyNode child = node();
+            parent.addChild( child );
+            parent = child;
+        }
+        run( "dependency-json-deep", root, 50 );
+    }
+
+    @Test
+    public void bushyGraph()
+        throws Exception
+    {
+        DependencyNode root = node();
+        addChildren( root, 3 );
+        run( "dependency-json-bushy", root, 50 );
+    }
+
+    private void addChildren( DependencyNode parent, int levels )
+    {
+        for ( int i = 0; i < 6; i++ )
+        {
+            DependencyNode child;
+            if ( levels == 1 && i % 2 == 1 )
+            {
+                Artifact artifact = artifact();
+                child = new DependencyNode( artifact, DependencyNode.OMITTED_FOR_DUPLICATE, artifact );
+            }
+            else
+            {
+                child = node();
+            }
+            parent.addChild( child );
+            if ( levels > 1 )
+            {
+                addChildren( child, levels - 1 );
+            }
+        }
+    }
+
+    private void run( String name, DependencyNode root, int defaultIterations )
+        throws Exception
+    {
+        Interner<String> interner = Interners.newStrongInterner();
+        assertThat( current( root, interner ) ).isEqualTo( legacy( root ) );
+
+        int warmup = Measurements.warmup( 5 );
+        int iterations = Measurements.iterations( defaultIterations );
+        Measurements current = new Measurements( name );
+        Measurements legacy = new Measurements( name + "-legacy" );
+        for ( int i = 0; i < warmup + iterations; i++ )
+        {
+            long allocated = Measurements.allocatedBytes();
+            long start = System.nanoTime();
+            current( root, interner );
+            long end = System.nanoTime();
+            if ( i >= warmup )
+            {
+                current.add( end - start );
+                current.addAllocation( Measurements.allocatedBytes() - allocated );
+            }
+
+            allocated = Measurements.allocatedBytes();
+            start = System.nanoTime();
+            legacy( root );
+            end = System.nanoTime();
+            if ( i >= warmup )
+            {
+                legacy.add( end - start );
+                legacy.addAllocation( Measurements.allocatedBytes() - allocated );
+            }
+        }
+        current.report();
+        legacy.report();
+    }
+
+    private static String current( DependencyNode root, Interner<String> interner )
+    {
+        StringBuilder json = new StringBuilder();
+        DependencyCollector.writeJson( root, new DependencyJsonWriter( json, interner ) );
+        return json.toString();
+    }
+
+    private DependencyNode node()
+    {
+        return new DependencyNode( artifact() );
+    }
+
+    private Artifact artifact()
+    {
+        artifacts++;
+        return new DefaultArtifact( "com.example.benchmark", "library-" + artifacts, "1." + artifacts,
+                                    Artifact.SCOPE_COMPILE, "jar", null, handler );
+    }
+
+    /**
+     * Copy of the serialization replaced by {@link DependencyJsonWriter}
+     */
+    private static String legacy( DependencyNode root )
+    {
+        final List<Dependency> result = new ArrayList<Dependency>();
+        DependencyNodeVisitor visitor = new BuildingDependencyNodeVisitor( new DependencyNodeVisitor()
+        {
+
+            private Deque<Dependency> stack = new ArrayDeque<Dependency>();
+
+            public boolean visit( DependencyNode node )
+            {
+                if ( node.getParent() != null && node.getParent() != node )
+                {
+                    Dependency dependency = toDependency( node );
+                    if ( stack.isEmpty() )
+                    {
+                        result.add( dependency );
+                    }
+                    else
+                    {
+                        stack.peek().dependencies.add( dependency );
+                    }
+                    stack.push( dependency );
+                }
+                return true;
+            }
+
+            public boolean endVisit( DependencyNode node )
+            {
+                if ( !stack.isEmpty() )
+                {
+                    stack.pop();
+                }
+                return true;
+            }
+        } );
+
+        DependencyNodeFilter filter = StateDependencyNodeFilter.INCLUDED;
+        CollectingDependencyNodeVisitor collectingVisitor = new CollectingDependencyNodeVisitor();
+        DependencyNodeVisitor firstPassVisitor = new FilteringDependencyNodeVisitor( collectingVisitor, filter );
+        root.accept( firstPassVisitor );
+        DependencyNodeFilter secondPassFilter = new AncestorOrSelfDependencyNodeFilter( collectingVisitor.getNodes() );
+        visitor = new FilteringDependencyNodeVisitor( visitor, secondPassFilter );
+        root.accept( visitor );
+
+        StringBuilder json = new StringBuilder();
+        json.append( '[' );
+        serializeDeps( json, result );
+        json.append( ']' );
+        return json.toString();
+    }
+
+    private static Dependency toDependency( DependencyNode node )
+    {
+        String key = String.format( "%s:%s", node.getArtifact().getGroupId(), node.getArtifact().getArtifactId() );
+        return new Dependency( key, node.getArtifact().getBaseVersion(), node.getArtifact().getScope() );
+    }
+
+    private static void serializeDeps( StringBuilder json, List<Dependency> deps )
+    {
+        for ( Iterator<Dependency> dependencyIt = deps.iterator(); dependencyIt.hasNext(); )
+        {
+            Dependency dependency = dependencyIt.next();
+            json.append( "{\"k\":\"" ).append( dependency.key ).append( "\",\"v\":\"" ).append( dependency.version )
+                .append( "\",\"s\":\"" ).append( dependency.scope ).append( "\",\"d\":[" );
+            serializeDeps( json, dependency.dependencies );
+            json.append( "]}" );
+            if ( dependencyIt.hasNext() )
+            {
+                json.append( ',' );
+            }
+        }
+    }
+
+    private static class Dependency
+    {
+
+        private final String key;
+
+        private final String version;
+
+        private final String scope;
+
+        private final List<Dependency> dependencies = new ArrayList<Dependency>();
+
+        Dependency( String key, String version, String scope )
+        {
+            this.key = key;
+            this.version = version;
+            this.scope = scope;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.codehaus.mojo.sonar.bootstrap;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class FileAttributesCacheTest
+{
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private FileAttributesCache cache = new FileAttributesCache();
+
+    @Test
+    public void probeEachPathOnce()
+        throws Exception
+    {
+        File dir = temp.newFolder();
+        File file = temp.newFile();
+        File missing = new File( dir, "missing" );
+
+        for ( int i = 0; i < 2; i++ )
+        {
+            assertThat( cache.isDirectory( dir ) ).isTrue();
+            assertThat( cache.exists( dir ) ).isTrue();
+            assertThat( cache.isFile( file ) ).isTrue();
+            assertThat( cache.isDirectory( file ) ).isFalse();
+            assertThat( cache.exists( missing ) ).isFalse();
+        }
+        assertThat( cache.getProbes() ).isEqualTo( 3 );
+        assertThat( cache.toString() ).isEqualTo( "File attributes: 3 probes for 3 distinct paths" );
+    }
+
+    @Test
+    public void prefetchInParallel()
+        throws Exception
+    {
+        File dir = temp.newFolder();
+        File file = temp.newFile();
+        File missing = new File( dir, "missing" );
+
+        cache.prefetch( Arrays.asList( dir, file, missing, file ), 4 );
+        assertThat( cache.getProbes() ).isEqualTo( 3 );
+
+        assertThat( cache.isDirectory( dir ) ).isTrue();
+        assertThat( cache.isFile( file ) ).isTrue();
+        assertThat( cache.exists( missing ) ).isFalse();
+        cache.prefetch( Arrays.asList( dir, file ), 4 );
+        assertThat( cache.getProbes() ).isEqualTo( 3 );
+    }
+}
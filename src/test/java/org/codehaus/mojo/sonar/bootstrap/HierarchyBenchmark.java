@@ -0,0 +1,165 @@
+package org.codehaus.mojo.sonar.bootstrap;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.mojo.sonar.benchmark.Measurements;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Throughput and allocation of the reconstruction of the module hierarchy, followed by its flattening, compared with
+ * the previous recursive implementation that prefixed keys at each level. Measured on a wide reactor (5,000 modules
+ * under the root) and on a deep one (a chain of 300 modules). Run with
+ * <code>mvn test -Dtest=HierarchyBenchmark</code>.
+ */
+public class HierarchyBenchmark
+{
+
+    private static final int PROPERTIES_PER_MODULE = 20;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final PathResolver pathResolver = new PathResolver();
+
+    private final MavenProjectConverter converter =
+        new MavenProjectConverter( mock( Log.class ), false, null, pathResolver );
+
+    @Test
+    public void wideReactor()
+        throws Exception
+    {
+        SyntheticReactor reactor = new SyntheticReactor( temp.newFolder(), 5000, 1, 0, 0 );
+        run( "hierarchy-wide", reactor.getProjects(), reactor.getRoot(), 20 );
+    }
+
+    @Test
+    public void deepReactor()
+        throws Exception
+    {
+        SyntheticReactor reactor = new SyntheticReactor( temp.newFolder(), 1, 300, 0, 0 );
+        run( "hierarchy-deep", reactor.getProjects(), reactor.getRoot(), 100 );
+    }
+
+    private void run( String name, List<MavenProject> projects, MavenProject root, int defaultIterations )
+        throws Exception
+    {
+        Map<MavenProject, Properties> propsByModule = new HashMap<MavenProject, Properties>();
+        for ( MavenProject project : projects )
+        {
+            Properties props = new Properties();
+            for ( int i = 0; i < PROPERTIES_PER_MODULE; i++ )
+            {
+                props.setProperty( "sonar.property" + i, project.getArtifactId() + i );
+            }
+            propsByModule.put( project, props );
+        }
+        assertThat( converter.buildHierarchy( projects, root, new HashMap<MavenProject, Properties>( propsByModule ) )
+                             .toProperties() ).isEqualTo( legacy( projects, root, propsByModule ) );
+
+        int warmup = Measurements.warmup( 5 );
+        int iterations = Measurements.iterations( defaultIterations );
+        Measurements current = new Measurements( name );
+        Measurements legacy = new Measurements( name + "-legacy" );
+        for ( int i = 0; i < warmup + iterations; i++ )
+        {
+            Map<MavenProject, Properties> copy = new HashMap<MavenProject, Properties>( propsByModule );
+            long allocated = Measurements.allocatedBytes();
+            long start = System.nanoTime();
+            converter.buildHierarchy( projects, root, copy ).flatten( new Properties() );
+            long end = System.nanoTime();
+            if ( i >= warmup )
+            {
+                current.add( end - start );
+                current.addAllocation( Measurements.allocatedBytes() - allocated );
+            }
+
+            allocated = Measurements.allocatedBytes();
+            start = System.nanoTime();
+            legacy( projects, root, propsByModule );
+            end = System.nanoTime();
+            if ( i >= warmup )
+            {
+                legacy.add( end - start );
+                legacy.addAllocation( Measurements.allocatedBytes() - allocated );
+            }
+        }
+        current.report();
+        legacy.report();
+    }
+
+    private Properties legacy( List<MavenProject> projects, MavenProject root,
+                               Map<MavenProject, Properties> propsByModule )
+        throws IOException
+    {
+        Map<String, MavenProject> paths = new HashMap<String, MavenProject>();
+        for ( MavenProject project : projects )
+        {
+            paths.put( pathResolver.canonicalPath( project.getFile() ), project );
+        }
+        Properties props = new Properties();
+        props.setProperty( "sonar.projectKey", root.getGroupId() + ":" + root.getArtifactId() );
+        legacyRebuild( props, paths, propsByModule, root, "" );
+        return props;
+    }
+
+    private void legacyRebuild( Properties properties, Map<String, MavenProject> paths,
+                                Map<MavenProject, Properties> propsByModule, MavenProject current, String prefix )
+        throws IOException
+    {
+        for ( Map.Entry<Object, Object> prop : propsByModule.get( current ).entrySet() )
+        {
+            properties.put( prefix + prop.getKey(), prop.getValue() );
+        }
+        List<String> moduleIds = new ArrayList<String>();
+        for ( String modulePathStr : current.getModules() )
+        {
+            File pom = new File( new File( current.getBasedir(), modulePathStr ), "pom.xml" );
+            MavenProject module = paths.get( pathResolver.canonicalPath( pom ) );
+            String moduleId = module.getGroupId() + ":" + module.getArtifactId();
+            legacyRebuild( properties, paths, propsByModule, module, prefix + moduleId + "." );
+            moduleIds.add( moduleId );
+        }
+        if ( !moduleIds.isEmpty() )
+        {
+            properties.put( prefix + "sonar.modules", StringUtils.join( moduleIds, ',' ) );
+        }
+    }
+}
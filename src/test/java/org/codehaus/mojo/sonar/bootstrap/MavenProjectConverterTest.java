@@ -24,6 +24,10 @@ package org.codehaus.mojo.sonar.bootstrap;
  * SOFTWARE.
  */
 
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
@@ -31,14 +35,23 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -315,6 +328,9 @@ public class MavenProjectConverterTest
         verify( log ).debug( "Module MavenProject: com.foo:module11:2.1 @ "
             + new File( module11BaseDir, "pom.xml" ).getAbsolutePath()
             + " skipped by property 'sonar.skip'" );
+        // nothing is computed for a skipped module
+        verify( dependencyCollector, never() ).toJson( module11 );
+        verify( dependencyCollector ).toJson( module12 );
     }
 
     @Test
@@ -471,4 +487,316 @@ public class MavenProjectConverterTest
         assertThat( props.getProperty( "sonar.projectName" ) ).isEqualTo( "My Project" );
         assertThat( props.getProperty( "sonar.projectVersion" ) ).isEqualTo( "2.1" );
     }
+
+    @Test
+    public void convertModulesInParallel()
+        throws Exception
+    {
+        List<MavenProject> projects = multiModuleProject( temp.newFolder(), 20 );
+        MavenProject root = projects.get( projects.size() - 1 );
+
+        Properties serial =
+            new MavenProjectConverter( log, false, dependencyCollector ).configure( projects, root,
+                                                                                    new Properties() );
+        Properties userProps = new Properties();
+        userProps.setProperty( "sonar.maven.threads", "4" );
+        Properties parallel =
+            new MavenProjectConverter( log, false, dependencyCollector ).configure( projects, root, userProps );
+
+        for ( String key : parallel.stringPropertyNames() )
+        {
+            if ( key.endsWith( "sonar.maven.threads" ) )
+            {
+                parallel.remove( key );
+            }
+        }
+        assertThat( parallel ).isEqualTo( serial );
+    }
+
+    @Test
+    public void collectDependenciesInParallel()
+        throws Exception
+    {
+        List<MavenProject> projects = multiModuleProject( temp.newFolder(), 20 );
+        MavenProject root = projects.get( projects.size() - 1 );
+        when( dependencyCollector.toJson( any( MavenProject.class ) ) ).thenAnswer( new Answer<String>()
+        {
+            public String answer( InvocationOnMock invocation )
+            {
+                return "[" + ( (MavenProject) invocation.getArguments()[0] ).getArtifactId() + "]";
+            }
+        } );
+
+        Properties serial =
+            new MavenProjectConverter( log, false, dependencyCollector ).configure( projects, root,
+                                                                                    new Properties() );
+        Properties userProps = new Properties();
+        userProps.setProperty( "sonar.maven.dependencyThreads", "4" );
+        Properties parallel =
+            new MavenProjectConverter( log, false, dependencyCollector ).configure( projects, root, userProps );
+
+        assertThat( parallel.getProperty( "com.foo:module7.sonar.maven.projectDependencies" ) ).isEqualTo( "[module7]" );
+        for ( String key : parallel.stringPropertyNames() )
+        {
+            if ( key.endsWith( "sonar.maven.dependencyThreads" ) )
+            {
+                parallel.remove( key );
+            }
+        }
+        assertThat( parallel ).isEqualTo( serial );
+    }
+
+    @Test
+    public void failOnInvalidNumberOfThreads()
+        throws Exception
+    {
+        List<MavenProject> projects = multiModuleProject( temp.newFolder(), 2 );
+        MavenProject root = projects.get( projects.size() - 1 );
+        root.getModel().getProperties().setProperty( "sonar.maven.threads", "zero" );
+        try
+        {
+            new MavenProjectConverter( log, false, dependencyCollector ).configure( projects, root,
+                                                                                    new Properties() );
+            fail();
+        }
+        catch ( MojoExecutionException e )
+        {
+            assertThat( e.getMessage() ).contains( "sonar.maven.threads" );
+        }
+    }
+
+    @Test
+    public void findModulesWithCustomPomFileName()
+        throws Exception
+    {
+        File baseDir = temp.newFolder();
+        List<MavenProject> projects = multiModuleProject( baseDir, 3 );
+        MavenProject root = projects.get( projects.size() - 1 );
+        // declared by directory, pom file is not pom.xml
+        projects.get( 0 ).setFile( new File( baseDir, "module0/build.xml" ) );
+        // declared by path to the pom file
+        projects.get( 1 ).setFile( new File( baseDir, "module1/other.xml" ) );
+        root.getModules().set( 1, "module1/other.xml" );
+
+        Properties props =
+            new MavenProjectConverter( log, false, dependencyCollector ).configure( projects, root,
+                                                                                    new Properties() );
+
+        assertThat( props.getProperty( "sonar.modules" ) ).isEqualTo( "com.foo:module0,com.foo:module1,"
+                                                                          + "com.foo:module2" );
+        File module0BaseDir = new File( baseDir, "module0" );
+        assertThat( props.getProperty( "com.foo:module0.sonar.projectBaseDir" ) ).isEqualTo( module0BaseDir.getAbsolutePath() );
+    }
+
+    @Test
+    public void removeNestedPaths()
+    {
+        File a = new File( "/a" ).getAbsoluteFile();
+        File src = new File( a, "src" );
+        File src2 = new File( a, "src2" );
+        File srcMain = new File( src, "main" );
+        File other = new File( "/other" ).getAbsoluteFile();
+
+        List<File> paths = Arrays.asList( srcMain, src2, other, src );
+        assertThat( MavenProjectConverter.removeNested( paths ) ).containsExactly( src2, other, src );
+        paths = Arrays.asList( src, srcMain, src );
+        assertThat( MavenProjectConverter.removeNested( paths ) ).containsExactly( src, src );
+        // "-" and "." sort before the separator
+        File srcGen = new File( a, "src-gen" );
+        File srcOld = new File( a, "src.old" );
+        File srcX = new File( src, "x" );
+        paths = Arrays.asList( src, srcGen, srcX, srcOld, new File( srcOld, "y" ) );
+        assertThat( MavenProjectConverter.removeNested( paths ) ).containsExactly( src, srcGen, srcOld );
+    }
+
+    @Test
+    public void reuseUnchangedModules()
+        throws Exception
+    {
+        File baseDir = temp.newFolder();
+        MavenProject project = new MavenProject();
+        project.getModel().setGroupId( "com.foo" );
+        project.getModel().setArtifactId( "myProject" );
+        project.getModel().setName( "My Project" );
+        project.getModel().setVersion( "2.1" );
+        project.getBuild().setDirectory( new File( baseDir, "target" ).getAbsolutePath() );
+        project.setFile( new File( baseDir, "pom.xml" ) );
+        Properties userProps = new Properties();
+        userProps.setProperty( "sonar.maven.incremental", "true" );
+        userProps.setProperty( "sonar.password", "secret" );
+
+        Properties first =
+            new MavenProjectConverter( log, false, dependencyCollector ).configure( Arrays.asList( project ), project,
+                                                                                    userProps );
+        Properties second =
+            new MavenProjectConverter( log, false, dependencyCollector ).configure( Arrays.asList( project ), project,
+                                                                                    userProps );
+        assertThat( second ).isEqualTo( first );
+        assertThat( second.getProperty( "sonar.password" ) ).isEqualTo( "secret" );
+        verify( dependencyCollector, times( 1 ) ).toJson( project );
+        File cache = new File( baseDir, "target/sonar/" + ModulePropertiesCache.FILE_NAME );
+        assertThat( FileUtils.readFileToString( cache ) ).doesNotContain( "secret" );
+
+        File scalaDir = new File( baseDir, "src/main/scala" );
+        scalaDir.mkdirs();
+        Properties third =
+            new MavenProjectConverter( log, false, dependencyCollector ).configure( Arrays.asList( project ), project,
+                                                                                    userProps );
+        assertThat( third.getProperty( "sonar.sources" ) ).isEqualTo( scalaDir.getAbsolutePath() );
+        verify( dependencyCollector, times( 2 ) ).toJson( project );
+    }
+
+    @Test
+    public void doNotCacheCredentialsOfTheModel()
+        throws Exception
+    {
+        File baseDir = temp.newFolder();
+        MavenProject project = new MavenProject();
+        project.getModel().setGroupId( "com.foo" );
+        project.getModel().setArtifactId( "myProject" );
+        project.getModel().setName( "My Project" );
+        project.getModel().setVersion( "2.1" );
+        project.getModel().getProperties().setProperty( "sonar.jdbc.password", "dbsecret" );
+        project.getModel().getProperties().setProperty( "sonar.login", "analyst" );
+        project.getBuild().setDirectory( new File( baseDir, "target" ).getAbsolutePath() );
+        project.setFile( new File( baseDir, "pom.xml" ) );
+        Properties userProps = new Properties();
+        userProps.setProperty( "sonar.maven.incremental", "true" );
+
+        Properties first =
+            new MavenProjectConverter( log, false, dependencyCollector ).configure( Arrays.asList( project ), project,
+                                                                                    userProps );
+        Properties second =
+            new MavenProjectConverter( log, false, dependencyCollector ).configure( Arrays.asList( project ), project,
+                                                                                    userProps );
+        assertThat( second ).isEqualTo( first );
+        assertThat( second.getProperty( "sonar.jdbc.password" ) ).isEqualTo( "dbsecret" );
+        assertThat( second.getProperty( "sonar.login" ) ).isEqualTo( "analyst" );
+        verify( dependencyCollector, times( 1 ) ).toJson( project );
+        File cache = new File( baseDir, "target/sonar/" + ModulePropertiesCache.FILE_NAME );
+        assertThat( FileUtils.readFileToString( cache ) ).doesNotContain( "dbsecret" ).doesNotContain( "analyst" );
+    }
+
+    @Test
+    public void keepModulePropertiesApartUntilFlattened()
+        throws Exception
+    {
+        List<MavenProject> projects = multiModuleProject( temp.newFolder(), 2 );
+        MavenProject root = projects.get( projects.size() - 1 );
+
+        ModuleProperties hierarchy =
+            new MavenProjectConverter( log, false, dependencyCollector ).configureHierarchy( projects, root,
+                                                                                             new Properties() );
+
+        assertThat( hierarchy.getId() ).isNull();
+        assertThat( hierarchy.getProperty( "sonar.modules" ) ).isEqualTo( "com.foo:module0,com.foo:module1" );
+        assertThat( hierarchy.getChildren() ).hasSize( 2 );
+        ModuleProperties module1 = hierarchy.getChildren().get( 1 );
+        assertThat( module1.getId() ).isEqualTo( "com.foo:module1" );
+        assertThat( module1.getProperty( "sonar.projectName" ) ).isEqualTo( "My Project - Module 1" );
+        assertThat( hierarchy.toProperties().getProperty( "com.foo:module1.sonar.projectName" ) ).isEqualTo( "My Project - Module 1" );
+    }
+
+    @Test
+    public void rebuildDeepHierarchy()
+        throws Exception
+    {
+        List<MavenProject> projects = new ArrayList<MavenProject>();
+        MavenProject parent = null;
+        File dir = temp.newFolder();
+        String prefix = "";
+        for ( int i = 0; i < 50; i++ )
+        {
+            dir = new File( dir, "m" );
+            dir.mkdir();
+            MavenProject module = new MavenProject();
+            module.getModel().setGroupId( "com.foo" );
+            module.getModel().setArtifactId( "module" + i );
+            module.getModel().setName( "Module " + i );
+            module.getModel().setVersion( "2.1" );
+            module.setFile( new File( dir, "pom.xml" ) );
+            if ( parent != null )
+            {
+                parent.getModules().add( "m" );
+                prefix += "com.foo:module" + i + ".";
+            }
+            projects.add( module );
+            parent = module;
+        }
+
+        Properties props =
+            new MavenProjectConverter( log, false, dependencyCollector ).configure( projects, projects.get( 0 ),
+                                                                                    new Properties() );
+
+        assertThat( props.getProperty( "sonar.modules" ) ).isEqualTo( "com.foo:module1" );
+        assertThat( props.getProperty( prefix + "sonar.projectName" ) ).isEqualTo( "Module 49" );
+        assertThat( props.getProperty( prefix + "sonar.modules" ) ).isNull();
+    }
+
+    @Test
+    public void shareLibrariesBetweenModules()
+        throws Exception
+    {
+        File baseDir = temp.newFolder();
+        File commonsLang = temp.newFile( "commons-lang.jar" );
+        File junit = temp.newFile( "junit.jar" );
+        List<MavenProject> projects = multiModuleProject( baseDir, 2 );
+        addLibrary( projects.get( 0 ), commonsLang );
+        addLibrary( projects.get( 1 ), commonsLang );
+        addLibrary( projects.get( 1 ), junit );
+        MavenProject root = projects.get( projects.size() - 1 );
+
+        Properties props =
+            new MavenProjectConverter( log, false, dependencyCollector ).configure( projects, root,
+                                                                                    new Properties() );
+
+        assertThat( props.getProperty( "com.foo:module0.sonar.libraries" ) ).isEqualTo( commonsLang.getAbsolutePath() );
+        assertThat( props.getProperty( "com.foo:module0.sonar.java.libraries" ) ).isEqualTo( commonsLang.getAbsolutePath() );
+        assertThat( props.getProperty( "com.foo:module1.sonar.libraries" ).split( "," ) ).containsOnly( commonsLang.getAbsolutePath(),
+                                                                                                       junit.getAbsolutePath() );
+        assertThat( props.getProperty( "sonar.libraries" ) ).isNull();
+    }
+
+    private static void addLibrary( MavenProject project, File jar )
+    {
+        DefaultArtifactHandler handler = new DefaultArtifactHandler( "jar" );
+        handler.setAddedToClasspath( true );
+        Artifact artifact =
+            new DefaultArtifact( "com.foo", jar.getName(), "1.0", Artifact.SCOPE_COMPILE, "jar", null, handler );
+        artifact.setFile( jar );
+        Set<Artifact> artifacts = new LinkedHashSet<Artifact>( project.getArtifacts() );
+        artifacts.add( artifact );
+        project.setArtifacts( artifacts );
+        project.getBuild().setOutputDirectory( new File( project.getBasedir(), "target/classes" ).getAbsolutePath() );
+    }
+
+    private static List<MavenProject> multiModuleProject( File baseDir, int modules )
+    {
+        MavenProject root = new MavenProject();
+        root.getModel().setGroupId( "com.foo" );
+        root.getModel().setArtifactId( "myProject" );
+        root.getModel().setName( "My Project" );
+        root.getModel().setVersion( "2.1" );
+        root.getModel().setPackaging( "pom" );
+        root.setFile( new File( baseDir, "pom.xml" ) );
+
+        List<MavenProject> projects = new ArrayList<MavenProject>();
+        for ( int i = 0; i < modules; i++ )
+        {
+            MavenProject module = new MavenProject();
+            module.getModel().setGroupId( "com.foo" );
+            module.getModel().setArtifactId( "module" + i );
+            module.getModel().setName( "My Project - Module " + i );
+            module.getModel().setVersion( "2.1" );
+            File moduleBaseDir = new File( baseDir, "module" + i );
+            new File( moduleBaseDir, "src/main/java" ).mkdirs();
+            module.setFile( new File( moduleBaseDir, "pom.xml" ) );
+            module.addCompileSourceRoot( new File( moduleBaseDir, "src/main/java" ).getAbsolutePath() );
+            module.setParent( root );
+            root.getModules().add( "module" + i );
+            projects.add( module );
+        }
+        projects.add( root );
+        return projects;
+    }
 }
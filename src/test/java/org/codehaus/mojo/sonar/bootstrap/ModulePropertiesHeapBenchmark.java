@@ -0,0 +1,115 @@
+package org.codehaus.mojo.sonar.bootstrap;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Compares the heap retained by {@link ModuleProperties} with the heap retained by the flat properties given to the
+ * runner, on a synthetic reactor of 5,000 modules nested on 4 levels. Run with
+ * <code>mvn test -Dtest=ModulePropertiesHeapBenchmark</code>, results are written to <code>target/benchmarks</code>.
+ */
+public class ModulePropertiesHeapBenchmark
+{
+
+    private static final int GROUPS = 10;
+
+    private static final int SUB_GROUPS = 10;
+
+    private static final int MODULES = 50;
+
+    private static final int CUSTOM_PROPERTIES = 10;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void retainedHeap()
+        throws Exception
+    {
+        SyntheticReactor reactor =
+            new SyntheticReactor( temp.newFolder(), new int[] { GROUPS, SUB_GROUPS, MODULES }, 0, 0,
+                                  CUSTOM_PROPERTIES );
+        List<MavenProject> projects = reactor.getProjects();
+        MavenProject root = reactor.getRoot();
+
+        DependencyCollector dependencyCollector = new DependencyCollector( null, null, null, null, null )
+        {
+            @Override
+            public synchronized String toJson( MavenProject project )
+            {
+                return "[]";
+            }
+        };
+        MavenProjectConverter converter = new MavenProjectConverter( mock( Log.class ), false, dependencyCollector );
+
+        long before = usedHeap();
+        ModuleProperties hierarchy = converter.configureHierarchy( projects, root, new Properties() );
+        long afterHierarchy = usedHeap();
+        Properties flat = hierarchy.toProperties();
+        long afterFlat = usedHeap();
+
+        long keyChars = 0L;
+        for ( Object key : flat.keySet() )
+        {
+            keyChars += ( (String) key ).length();
+        }
+        String report =
+            String.format( Locale.ENGLISH, "module-properties-heap: modules=%d properties=%d key-chars=%d "
+                + "hierarchy=%.1fMB flat=%.1fMB", projects.size(), flat.size(), keyChars,
+                           ( afterHierarchy - before ) / 1048576.0, ( afterFlat - afterHierarchy ) / 1048576.0 );
+        System.out.println( report );
+        FileUtils.writeStringToFile( new File( "target/benchmarks", "module-properties-heap.txt" ), report + "\n",
+                                     "UTF-8" );
+
+        assertThat( hierarchy.getChildren() ).hasSize( GROUPS );
+        assertThat( flat.getProperty( "sonar.modules" ) ).isNotNull();
+    }
+
+    private static long usedHeap()
+        throws InterruptedException
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for ( int i = 0; i < 5; i++ )
+        {
+            System.gc();
+            Thread.sleep( 50L );
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
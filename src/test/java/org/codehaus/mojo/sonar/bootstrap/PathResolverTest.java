@@ -0,0 +1,68 @@
+package org.codehaus.mojo.sonar.bootstrap;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PathResolverTest
+{
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private PathResolver resolver = new PathResolver();
+
+    @Test
+    public void memoizeCanonicalPaths()
+        throws Exception
+    {
+        File dir = temp.newFolder();
+        File file = new File( dir, "sub/../pom.xml" );
+
+        assertThat( resolver.canonicalPath( file ) ).isEqualTo( file.getCanonicalPath() );
+        assertThat( resolver.canonicalPath( file ) ).isEqualTo( file.getCanonicalPath() );
+        assertThat( resolver.canonicalFile( file ) ).isEqualTo( file.getCanonicalFile() );
+        assertThat( resolver.getMisses() ).isEqualTo( 1 );
+        assertThat( resolver.getHits() ).isEqualTo( 2 );
+    }
+
+    @Test
+    public void memoizeAbsolutePaths()
+    {
+        File file = new File( "relative/path" );
+
+        assertThat( resolver.absolutePath( file ) ).isEqualTo( file.getAbsolutePath() );
+        assertThat( resolver.absolutePath( new File( "relative/path" ) ) ).isEqualTo( file.getAbsolutePath() );
+        assertThat( resolver.getMisses() ).isEqualTo( 1 );
+        assertThat( resolver.getHits() ).isEqualTo( 1 );
+        assertThat( resolver.toString() ).isEqualTo( "Path resolution: 1 hits, 1 misses" );
+    }
+}
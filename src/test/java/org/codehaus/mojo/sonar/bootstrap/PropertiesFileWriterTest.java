@@ -0,0 +1,62 @@
+package org.codehaus.mojo.sonar.bootstrap;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.util.Properties;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PropertiesFileWriterTest
+{
+
+    @Test
+    public void readableByProperties()
+        throws Exception
+    {
+        Properties expected = new Properties();
+        expected.setProperty( "sonar.projectKey", "com.foo:bar" );
+        expected.setProperty( "com.foo:bar.sonar.sources", "C:\\src\\main\\java,/src/main/scala" );
+        expected.setProperty( "key with spaces=and:separators", "  value with leading spaces" );
+        expected.setProperty( "sonar.json", "[{\"k\":\"a#b!c\",\"d\":[]}]" );
+        expected.setProperty( "sonar.multiline", "line1\nline2\r\tend\f" );
+        expected.setProperty( "sonar.projectName", "Proj\u00e9t \u65e5\u672c" );
+        expected.setProperty( "sonar.empty", "" );
+
+        StringWriter output = new StringWriter();
+        PropertiesFileWriter writer = new PropertiesFileWriter( output );
+        for ( String key : expected.stringPropertyNames() )
+        {
+            writer.put( key, expected.getProperty( key ) );
+        }
+        Properties actual = new Properties();
+        actual.load( new ByteArrayInputStream( output.toString().getBytes( "ISO-8859-1" ) ) );
+
+        assertThat( actual ).isEqualTo( expected );
+    }
+}
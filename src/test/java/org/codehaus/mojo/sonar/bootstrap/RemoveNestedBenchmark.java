@@ -0,0 +1,122 @@
+package org.codehaus.mojo.sonar.bootstrap;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.codehaus.mojo.sonar.benchmark.Measurements;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Compares {@link MavenProjectConverter#removeNested(List)} with the previous quadratic implementation, on lists of
+ * source roots as produced by code generators. Run with <code>mvn test -Dtest=RemoveNestedBenchmark</code>.
+ */
+public class RemoveNestedBenchmark
+{
+
+    private static final int[] SIZES = { 10, 100, 500 };
+
+    @Test
+    public void removeNested()
+        throws Exception
+    {
+        int warmup = Measurements.warmup( 200 );
+        int iterations = Measurements.iterations( 1000 );
+        for ( int size : SIZES )
+        {
+            List<File> paths = sourceRoots( size );
+            assertThat( MavenProjectConverter.removeNested( paths ) ).isEqualTo( legacyRemoveNested( paths ) );
+
+            Measurements current = new Measurements( "remove-nested-" + size );
+            Measurements legacy = new Measurements( "remove-nested-legacy-" + size );
+            for ( int i = 0; i < warmup + iterations; i++ )
+            {
+                long start = System.nanoTime();
+                MavenProjectConverter.removeNested( paths );
+                long middle = System.nanoTime();
+                legacyRemoveNested( paths );
+                long end = System.nanoTime();
+                if ( i >= warmup )
+                {
+                    current.add( middle - start );
+                    legacy.add( end - middle );
+                }
+            }
+            current.report();
+            legacy.report();
+        }
+    }
+
+    /**
+     * Generated roots, a tenth of them being nested in another one. Names avoid the prefix false positive that the
+     * legacy implementation does not handle.
+     */
+    private static List<File> sourceRoots( int size )
+    {
+        File basedir = new File( "/workspace/module" ).getAbsoluteFile();
+        List<File> paths = new ArrayList<File>( size );
+        for ( int i = 0; i < size; i++ )
+        {
+            if ( i % 10 == 9 )
+            {
+                paths.add( new File( paths.get( i - 1 ), "nested" ) );
+            }
+            else
+            {
+                paths.add( new File( basedir, "target/generated-sources/gen-" + i + "-sources" ) );
+            }
+        }
+        Collections.shuffle( paths, new Random( 42L ) );
+        return paths;
+    }
+
+    private static List<File> legacyRemoveNested( List<File> originalPaths )
+    {
+        List<File> result = new ArrayList<File>();
+        for ( File maybeChild : originalPaths )
+        {
+            boolean hasParent = false;
+            for ( File possibleParent : originalPaths )
+            {
+                if ( maybeChild.getAbsolutePath().startsWith( possibleParent.getAbsolutePath() )
+                    && !maybeChild.getAbsolutePath().equals( possibleParent.getAbsolutePath() ) )
+                {
+                    hasParent = true;
+                }
+            }
+            if ( !hasParent )
+            {
+                result.add( maybeChild );
+            }
+        }
+        return result;
+    }
+}
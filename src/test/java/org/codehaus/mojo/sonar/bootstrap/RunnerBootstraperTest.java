@@ -0,0 +1,155 @@
+package org.codehaus.mojo.sonar.bootstrap;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.rtinfo.RuntimeInformation;
+import org.codehaus.mojo.sonar.ServerCapabilities;
+import org.codehaus.mojo.sonar.ServerMetadata;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Properties;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RunnerBootstraperTest
+{
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private MavenSession session = mock( MavenSession.class );
+
+    private File pomXml;
+
+    private MavenProject project;
+
+    private RunnerBootstraper bootstraper;
+
+    @Before
+    public void prepare()
+        throws Exception
+    {
+        File baseDir = temp.newFolder();
+        pomXml = new File( baseDir, "pom.xml" );
+        pomXml.createNewFile();
+        project = new MavenProject();
+        project.getModel().setGroupId( "com.foo" );
+        project.getModel().setArtifactId( "myProject" );
+        project.getModel().setName( "My Project" );
+        project.getModel().setVersion( "2.1" );
+        project.setFile( pomXml );
+        project.setArtifact( new DefaultArtifact( "com.foo", "myProject", "2.1", Artifact.SCOPE_COMPILE, "jar", null,
+                                                  new DefaultArtifactHandler( "jar" ) ) );
+        when( session.getUserProperties() ).thenReturn( new Properties() );
+        when( session.getTopLevelProject() ).thenReturn( project );
+        when( session.getProjects() ).thenReturn( Arrays.asList( project ) );
+        bootstraper =
+            new RunnerBootstraper( mock( RuntimeInformation.class ), mock( Log.class ), session, null, null, null, null,
+                                   null, null, null, null, mock( ServerMetadata.class ) );
+    }
+
+    @Test
+    public void reusePreparedPropertiesForLatestFeatures()
+        throws Exception
+    {
+        bootstraper.prepare( null );
+        ModuleProperties properties = bootstraper.properties( ServerCapabilities.of( "5.0" ) );
+
+        assertThat( properties.getProperty( "sonar.sources" ) ).isEqualTo( pomXml.getAbsolutePath() );
+        verify( session, times( 1 ) ).getProjects();
+    }
+
+    @Test
+    public void reusePreparedPropertiesForKnownFeatures()
+        throws Exception
+    {
+        bootstraper.prepare( ServerCapabilities.of( "4.4" ) );
+        ModuleProperties properties = bootstraper.properties( ServerCapabilities.of( "4.4" ) );
+
+        assertThat( properties.getProperty( "sonar.sources" ) ).isEmpty();
+        verify( session, times( 1 ) ).getProjects();
+    }
+
+    @Test
+    public void convertAgainWithoutFilesAsSources()
+        throws Exception
+    {
+        bootstraper.prepare( null );
+        ModuleProperties properties = bootstraper.properties( ServerCapabilities.of( "4.4" ) );
+
+        assertThat( properties.getProperty( "sonar.sources" ) ).isEmpty();
+        verify( session, times( 2 ) ).getProjects();
+    }
+
+    @Test
+    public void rethrowFailureOfPreparedConversion()
+        throws Exception
+    {
+        IllegalStateException failure = new IllegalStateException( "Unable to convert" );
+        when( session.getProjects() ).thenThrow( failure ).thenReturn( Arrays.asList( project ) );
+        bootstraper.prepare( null );
+
+        try
+        {
+            bootstraper.properties( ServerCapabilities.of( "5.0" ) );
+            fail();
+        }
+        catch ( IllegalStateException e )
+        {
+            assertThat( e ).isSameAs( failure );
+        }
+        verify( session, times( 1 ) ).getProjects();
+    }
+
+    @Test
+    public void ignoreFailureOfPreparedConversionWhenConvertingAgain()
+        throws Exception
+    {
+        when( session.getProjects() ).thenThrow( new IllegalStateException( "Unable to convert" ) )
+                                     .thenReturn( Arrays.asList( project ) );
+        bootstraper.prepare( null );
+
+        ModuleProperties properties = bootstraper.properties( ServerCapabilities.of( "4.4" ) );
+
+        assertThat( properties.getProperty( "sonar.sources" ) ).isEmpty();
+        verify( session, times( 2 ) ).getProjects();
+    }
+}
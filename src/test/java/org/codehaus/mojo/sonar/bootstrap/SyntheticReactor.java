@@ -0,0 +1,184 @@
+package org.codehaus.mojo.sonar.bootstrap;
+
+/*
+ * The MIT License
+ *
+ * Copyright 2009 The Codehaus.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reactor generated on disk for benchmarks: aggregators nested <code>depth</code> levels deep, each of them having
+ * <code>width</code> modules, the last level being jar modules with <code>sourceRoots</code> main and test source
+ * roots and <code>classpathSize</code> jars picked from a local repository shared by the whole reactor. Projects are
+ * listed in reactor order, modules before their aggregator.
+ */
+class SyntheticReactor
+{
+
+    private final int[] widths;
+
+    private final int classpathSize;
+
+    private final int sourceRoots;
+
+    private final int customProperties;
+
+    private final List<File> repository = new ArrayList<File>();
+
+    private final List<MavenProject> projects = new ArrayList<MavenProject>();
+
+    private final MavenProject root;
+
+    private int jarModules;
+
+    private int modules;
+
+    SyntheticReactor( File baseDir, int width, int depth, int classpathSize, int sourceRoots )
+        throws IOException
+    {
+        this( baseDir, widths( width, depth ), classpathSize, sourceRoots, 0 );
+    }
+
+    /**
+     * @param widths number of modules of the aggregators of each level, the reactor being as deep as the array
+     * @param customProperties number of properties defined in the pom of each project
+     */
+    SyntheticReactor( File baseDir, int[] widths, int classpathSize, int sourceRoots, int customProperties )
+        throws IOException
+    {
+        this.widths = widths;
+        this.classpathSize = classpathSize;
+        this.sourceRoots = sourceRoots;
+        this.customProperties = customProperties;
+        File repositoryDir = new File( baseDir, "repository" );
+        repositoryDir.mkdirs();
+        for ( int i = 0; i < 2 * classpathSize; i++ )
+        {
+            File jar = new File( repositoryDir, "library-" + i + ".jar" );
+            jar.createNewFile();
+            repository.add( jar );
+        }
+        this.root = newProject( new File( baseDir, "root" ), "root", 0 );
+    }
+
+    private static int[] widths( int width, int depth )
+    {
+        int[] widths = new int[depth];
+        Arrays.fill( widths, width );
+        return widths;
+    }
+
+    List<MavenProject> getProjects()
+    {
+        return projects;
+    }
+
+    MavenProject getRoot()
+    {
+        return root;
+    }
+
+    @Override
+    public String toString()
+    {
+        return projects.size() + " modules (widths=" + Arrays.toString( widths ) + ", classpath=" + classpathSize
+            + ", sourceRoots=" + sourceRoots + ")";
+    }
+
+    private MavenProject newProject( File dir, String name, int level )
+    {
+        MavenProject project = new MavenProject();
+        project.getModel().setGroupId( "com.example.synthetic" );
+        // not made of the names of the parents, so that keys of deep reactors do not grow quadratically
+        project.getModel().setArtifactId( name );
+        project.getModel().setName( "Synthetic " + name );
+        project.getModel().setVersion( "1.0" );
+        project.setFile( new File( dir, "pom.xml" ) );
+        project.getBuild().setDirectory( new File( dir, "target" ).getAbsolutePath() );
+        for ( int i = 0; i < customProperties; i++ )
+        {
+            // distinct instances, as if each pom was parsed separately
+            project.getModel().getProperties().setProperty( new String( "sonar.custom.property" + i ),
+                                                            new String( "value" + i ) );
+        }
+        if ( level < widths.length )
+        {
+            project.getModel().setPackaging( "pom" );
+            for ( int i = 0; i < widths[level]; i++ )
+            {
+                String moduleName = "m" + i;
+                newProject( new File( dir, moduleName ), "module" + ( ++modules ), level + 1 ).setParent( project );
+                project.getModules().add( moduleName );
+            }
+        }
+        else
+        {
+            populateJarModule( project, dir );
+        }
+        projects.add( project );
+        return project;
+    }
+
+    private void populateJarModule( MavenProject project, File dir )
+    {
+        File classes = new File( dir, "target/classes" );
+        classes.mkdirs();
+        project.getBuild().setOutputDirectory( classes.getAbsolutePath() );
+        for ( int i = 0; i < sourceRoots; i++ )
+        {
+            File main = new File( dir, "src/main/java" + i );
+            File test = new File( dir, "src/test/java" + i );
+            main.mkdirs();
+            test.mkdirs();
+            project.addCompileSourceRoot( main.getAbsolutePath() );
+            project.addTestCompileSourceRoot( test.getAbsolutePath() );
+        }
+
+        DefaultArtifactHandler handler = new DefaultArtifactHandler( "jar" );
+        handler.setAddedToClasspath( true );
+        Set<Artifact> artifacts = new LinkedHashSet<Artifact>();
+        // consecutive modules share most of their libraries, as in real reactors
+        for ( int i = 0; i < classpathSize; i++ )
+        {
+            File jar = repository.get( ( jarModules + i ) % repository.size() );
+            Artifact artifact =
+                new DefaultArtifact( "com.example.library", jar.getName(), "1.0", Artifact.SCOPE_COMPILE, "jar",
+                                     null, handler );
+            artifact.setFile( jar );
+            artifacts.add( artifact );
+        }
+        project.setArtifacts( artifacts );
+        jarModules++;
+    }
+}
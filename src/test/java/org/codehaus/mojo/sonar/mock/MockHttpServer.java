@@ -17,6 +17,12 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static javax.servlet.http.HttpServletResponse.SC_OK;
 import static org.apache.commons.io.IOUtils.write;
@@ -27,6 +33,9 @@ public final class MockHttpServer {
   private String requestBody;
   private String mockResponseData;
   private int mockResponseStatus = SC_OK;
+  private final AtomicInteger requestCount = new AtomicInteger();
+  private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+  private MockResponseProfile profile = MockResponseProfile.fast();
 
   public void start() throws Exception {
     // 0 is random available port
@@ -45,17 +54,45 @@ public final class MockHttpServer {
 
       public void handle(String target, HttpServletRequest request, HttpServletResponse response, int dispatch) throws IOException, ServletException {
         Request baseRequest = request instanceof Request ? (Request) request : HttpConnection.getCurrentConnection().getRequest();
+        requestCount.incrementAndGet();
+        clientPorts.add(request.getRemotePort());
         setResponseBody(getMockResponseData());
         setRequestBody(IOUtils.toString(baseRequest.getInputStream()));
-        response.setStatus(mockResponseStatus);
+        pause(profile.nextLatency());
+        response.setStatus(profile.nextIsFailure() ? profile.getFailureStatus() : mockResponseStatus);
         response.setContentType("text/xml;charset=utf-8");
-        write(getResponseBody(), response.getOutputStream());
+        writeBody(getResponseBody(), response.getOutputStream());
         baseRequest.setHandled(true);
       }
     };
     return handler;
   }
 
+  private void writeBody(String body, OutputStream output) throws IOException {
+    if (body == null || profile.getChunkSize() <= 0) {
+      write(body, output);
+      return;
+    }
+    byte[] bytes = body.getBytes("UTF-8");
+    for (int offset = 0; offset < bytes.length; offset += profile.getChunkSize()) {
+      output.write(bytes, offset, Math.min(profile.getChunkSize(), bytes.length - offset));
+      output.flush();
+      pause(profile.getChunkDelayMillis());
+    }
+  }
+
+  private static void pause(long millis) throws IOException {
+    if (millis <= 0) {
+      return;
+    }
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+  }
+
   public void stop() {
     try {
       if (server != null) {
@@ -94,6 +131,21 @@ public final class MockHttpServer {
     return mockResponseData;
   }
 
+  public void setProfile(MockResponseProfile profile) {
+    this.profile = profile;
+  }
+
+  public int getRequestCount() {
+    return requestCount.get();
+  }
+
+  /**
+   * @return number of distinct client connections the requests were received on
+   */
+  public int getConnectionCount() {
+    return clientPorts.size();
+  }
+
   public int getPort() {
     return server.getConnectors()[0].getLocalPort();
   }
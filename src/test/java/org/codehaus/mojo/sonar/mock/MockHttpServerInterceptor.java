@@ -30,6 +30,18 @@ public final class MockHttpServerInterceptor extends ExternalResource {
     server.setMockResponseStatus(status);
   }
 
+  public void setProfile(MockResponseProfile profile) {
+    server.setProfile(profile);
+  }
+
+  public int getRequestCount() {
+    return server.getRequestCount();
+  }
+
+  public int getConnectionCount() {
+    return server.getConnectionCount();
+  }
+
   public int getPort() {
     return server.getPort();
   }
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2011-2014 SonarSource SA
+ * All rights reserved
+ * mailto:contact AT sonarsource DOT com
+ */
+package org.codehaus.mojo.sonar.mock;
+
+import java.util.Random;
+
+/**
+ * Degrades the responses of {@link MockHttpServer}: latency before answering, slow body and random failures.
+ * Randomness is seeded, so a given profile always produces the same sequence of responses.
+ */
+public final class MockResponseProfile {
+  private final String name;
+  private long latencyMillis;
+  private long jitterMillis;
+  private int chunkSize;
+  private long chunkDelayMillis;
+  private double failureRate;
+  private int failureStatus = 503;
+  private Random random = new Random(42L);
+
+  public MockResponseProfile(String name) {
+    this.name = name;
+  }
+
+  public static MockResponseProfile fast() {
+    return new MockResponseProfile("fast");
+  }
+
+  public MockResponseProfile latency(long latencyMillis, long jitterMillis) {
+    this.latencyMillis = latencyMillis;
+    this.jitterMillis = jitterMillis;
+    return this;
+  }
+
+  /**
+   * Sends the body by chunks of <code>chunkSize</code> bytes, waiting <code>chunkDelayMillis</code> between chunks.
+   */
+  public MockResponseProfile slowBody(int chunkSize, long chunkDelayMillis) {
+    this.chunkSize = chunkSize;
+    this.chunkDelayMillis = chunkDelayMillis;
+    return this;
+  }
+
+  public MockResponseProfile failures(double failureRate, int failureStatus) {
+    this.failureRate = failureRate;
+    this.failureStatus = failureStatus;
+    return this;
+  }
+
+  public MockResponseProfile seed(long seed) {
+    this.random = new Random(seed);
+    return this;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  synchronized long nextLatency() {
+    if (jitterMillis <= 0) {
+      return latencyMillis;
+    }
+    return Math.max(0L, latencyMillis - jitterMillis + (long) (random.nextDouble() * 2 * jitterMillis));
+  }
+
+  synchronized boolean nextIsFailure() {
+    return failureRate > 0 && random.nextDouble() < failureRate;
+  }
+
+  int getFailureStatus() {
+    return failureStatus;
+  }
+
+  int getChunkSize() {
+    return chunkSize;
+  }
+
+  long getChunkDelayMillis() {
+    return chunkDelayMillis;
+  }
+
+  @Override
+  public String toString() {
+    return name + " [latency=" + latencyMillis + "ms +/-" + jitterMillis + "ms, chunk=" + chunkSize + "B/"
+      + chunkDelayMillis + "ms, failures=" + failureRate + "]";
+  }
+}